@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * The certificate chains and trust stores the benchmarks run against.
+ */
+final class BenchmarkFixtures {
+
+  static final String TEST_LEAF_PIN         = "sha256/Otgdu3wEJR/raTE3N0RO7hI00AucAKx6Iaaw43n/hCY=";
+  static final String TEST_INTERMEDIATE_PIN = "sha256/+4N2axkPOUmtv4Kk0IegFKYDN4IhSimQAY/KvhpQlGk=";
+  static final String UNRELATED_PIN         = "40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd";
+
+  private static final String BUNDLED_INDEX = "../res/raw/cacerts_index.idx";
+
+  private BenchmarkFixtures() {}
+
+  static X509Certificate root() throws CertificateException {
+    return TestCertificates.parse(TestCertificates.TEST_ROOT);
+  }
+
+  /**
+   * @return The leaf and intermediate, as a server would present them.
+   */
+  static X509Certificate[] chain() throws CertificateException {
+    return new X509Certificate[] {TestCertificates.parse(TestCertificates.TEST_LEAF),
+                                  TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE)};
+  }
+
+  /**
+   * @return The presented chain with the root appended and an unrelated
+   *         certificate tacked on the end, for the cleaner to trim.
+   */
+  static X509Certificate[] untidyChain() throws CertificateException {
+    final X509Certificate[] chain = Arrays.copyOf(chain(), 4);
+    chain[2] = root();
+    chain[3] = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+
+    return chain;
+  }
+
+  /**
+   * @return The untidy chain in a different order, with the intermediate
+   *         last, so the cleaner has to look its issuers up.
+   */
+  static X509Certificate[] shuffledChain() throws CertificateException {
+    final X509Certificate[] chain = untidyChain();
+    return new X509Certificate[] {chain[0], chain[3], chain[2], chain[1]};
+  }
+
+  /**
+   * @return A key store whose only anchor is the test root.
+   */
+  static TrustAnchorStore testKeyStore() throws IOException, CertificateException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TrustAnchorIndex.write(Arrays.asList(root()), out);
+
+    return new TrustAnchorStore(new TrustAnchorIndex(ByteBuffer.wrap(out.toByteArray())));
+  }
+
+  /**
+   * @return The trust anchor index that ships in res/raw.
+   */
+  static TrustAnchorIndex bundledIndex() throws IOException {
+    final File        file  = new File(BUNDLED_INDEX);
+    final byte[]      bytes = new byte[(int) file.length()];
+    final InputStream in    = new FileInputStream(file);
+
+    try {
+      int read = 0;
+
+      while (read < bytes.length) {
+        final int count = in.read(bytes, read, bytes.length - read);
+
+        if (count == -1) {
+          throw new IOException("Truncated trust anchor index: " + file);
+        }
+
+        read += count;
+      }
+    } finally {
+      in.close();
+    }
+
+    return new TrustAnchorIndex(ByteBuffer.wrap(bytes));
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CertificateChainCleaner.getCleanChain(), with the link verification
+ * cache warm (the steady state) and cleared before every call.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChainCleanerBenchmark {
+
+  private TrustAnchorStore  keyStore;
+  private X509Certificate[] chain;
+  private X509Certificate[] untidyChain;
+  private X509Certificate[] shuffledChain;
+
+  @Setup
+  public void setUp() throws Exception {
+    keyStore      = BenchmarkFixtures.testKeyStore();
+    chain         = BenchmarkFixtures.chain();
+    untidyChain   = BenchmarkFixtures.untidyChain();
+    shuffledChain = BenchmarkFixtures.shuffledChain();
+  }
+
+  @Benchmark
+  public X509Certificate[] presentedChain() throws CertificateException {
+    return CertificateChainCleaner.getCleanChain(chain, keyStore);
+  }
+
+  @Benchmark
+  public X509Certificate[] untidyChain() throws CertificateException {
+    return CertificateChainCleaner.getCleanChain(untidyChain, keyStore);
+  }
+
+  @Benchmark
+  public X509Certificate[] shuffledChain() throws CertificateException {
+    return CertificateChainCleaner.getCleanChain(shuffledChain, keyStore);
+  }
+
+  @Benchmark
+  public X509Certificate[] presentedChainCold() throws CertificateException {
+    LinkVerificationCache.clear();
+    return CertificateChainCleaner.getCleanChain(chain, keyStore);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pin matching: hashing a certificate's SubjectPublicKeyInfo and looking
+ * it up, and the PinSet lookup on its own.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PinMatchBenchmark {
+
+  private PinSet          pins;
+  private X509Certificate pinned;
+  private X509Certificate unpinned;
+  private byte[]          pinnedDigest;
+
+  @Setup
+  public void setUp() throws Exception {
+    final X509Certificate[] chain = BenchmarkFixtures.chain();
+
+    pins         = new PinSet(new String[] {BenchmarkFixtures.UNRELATED_PIN,
+                                            BenchmarkFixtures.TEST_INTERMEDIATE_PIN});
+    pinned       = chain[1];
+    unpinned     = chain[0];
+    pinnedDigest = SpkiHasher.getInstance().sha256(pinned).clone();
+  }
+
+  @Benchmark
+  public boolean isPinned() throws CertificateException {
+    return SpkiHasher.getInstance().isPinned(pinned, pins);
+  }
+
+  @Benchmark
+  public boolean isNotPinned() throws CertificateException {
+    return SpkiHasher.getInstance().isPinned(unpinned, pins);
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return pins.contains(pinnedDigest);
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a chain's digests against PinSet, and against the linear
+ * LinkedList scan PinningTrustManager used to do.  Nothing matches until
+ * the last certificate, which is the common handshake case.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PinSetBenchmark {
+
+  private static final int CHAIN_LENGTH = 3;
+
+  @Param({"2", "32"})
+  public int pinCount;
+
+  private List<byte[]> list;
+  private PinSet       pinSet;
+  private byte[][]     chain;
+
+  @Setup
+  public void setUp() throws Exception {
+    final MessageDigest digest  = MessageDigest.getInstance("SHA1");
+    final String[]      encoded = new String[pinCount];
+
+    list = new LinkedList<byte[]>();
+
+    for (int i = 0; i < pinCount; i++) {
+      final byte[] pin = digest.digest(("pin" + i).getBytes("UTF-8"));
+
+      encoded[i] = toHex(pin);
+      list.add(pin);
+    }
+
+    pinSet = new PinSet(encoded);
+    chain  = new byte[CHAIN_LENGTH][];
+
+    for (int i = 0; i < CHAIN_LENGTH - 1; i++) {
+      chain[i] = digest.digest(("certificate" + i).getBytes("UTF-8"));
+    }
+
+    chain[CHAIN_LENGTH - 1] = list.get(pinCount - 1).clone();
+  }
+
+  @Benchmark
+  public boolean linkedList() {
+    for (byte[] digest : chain) {
+      for (byte[] pin : list) {
+        if (Arrays.equals(pin, digest)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  @Benchmark
+  public boolean pinSet() {
+    for (byte[] digest : chain) {
+      if (pinSet.contains(digest)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder builder = new StringBuilder();
+
+    for (byte b : bytes) {
+      builder.append(String.format("%02x", b & 0xff));
+    }
+
+    return builder.toString();
+  }
+}
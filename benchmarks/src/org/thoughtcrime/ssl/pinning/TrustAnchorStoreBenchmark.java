@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the bundled trust anchor index, and the two lookups
+ * the chain cleaner makes against it.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrustAnchorStoreBenchmark {
+
+  private TrustAnchorStore keyStore;
+  private X509Certificate  anchor;
+  private X509Certificate  anchored;
+  private X509Certificate  issued;
+  private X509Certificate  unrelated;
+
+  @Setup
+  public void setUp() throws Exception {
+    final TrustAnchorIndex index = BenchmarkFixtures.bundledIndex();
+
+    keyStore  = new TrustAnchorStore(index);
+    anchor    = index.getCertificate(index.size() / 2);
+    anchored  = TestCertificates.parse(TestCertificates.VERISIGN_CLASS_THREE);
+    unrelated = BenchmarkFixtures.chain()[0];
+    issued    = BenchmarkFixtures.chain()[1];
+  }
+
+  @Benchmark
+  public TrustAnchorStore load() throws IOException {
+    return new TrustAnchorStore(BenchmarkFixtures.bundledIndex());
+  }
+
+  @Benchmark
+  public boolean isTrustRootHit() {
+    return keyStore.isTrustRoot(anchor);
+  }
+
+  @Benchmark
+  public boolean isTrustRootMiss() {
+    return keyStore.isTrustRoot(unrelated);
+  }
+
+  @Benchmark
+  public X509Certificate getTrustRootForHit() {
+    return keyStore.getTrustRootFor(anchored);
+  }
+
+  @Benchmark
+  public X509Certificate getTrustRootForMiss() {
+    return keyStore.getTrustRootFor(issued);
+  }
+}
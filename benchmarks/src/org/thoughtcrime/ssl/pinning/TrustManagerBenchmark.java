@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PinningTrustManager.checkServerTrusted() in each ValidationMode:
+ *
+ * <ul>
+ * <li>cold: neither the validated chain cache nor the link verification cache can help,
+ *     which is what the first handshake with a server costs.</li>
+ * <li>warm: the chain was validated before, which is what every later handshake costs.</li>
+ * <li>contended: warm, with four threads sharing one trust manager.</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TrustManagerBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class TrustManagerState {
+
+    @Param({"SYSTEM_THEN_PINS", "SINGLE_PASS"})
+    public ValidationMode mode;
+
+    PinningTrustManager trustManager;
+    X509Certificate[]   chain;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      trustManager = new PinningTrustManager(BenchmarkFixtures.testKeyStore(),
+                                             new String[] {BenchmarkFixtures.UNRELATED_PIN,
+                                                           BenchmarkFixtures.TEST_LEAF_PIN},
+                                             0);
+      chain        = BenchmarkFixtures.chain();
+
+      trustManager.setValidationMode(mode);
+      trustManager.checkServerTrusted(chain, "RSA");
+    }
+  }
+
+  @Benchmark
+  public void cold(TrustManagerState state) throws CertificateException {
+    state.trustManager.clearCache();
+    LinkVerificationCache.clear();
+    state.trustManager.checkServerTrusted(state.chain, "RSA");
+  }
+
+  @Benchmark
+  public void warm(TrustManagerState state) throws CertificateException {
+    state.trustManager.checkServerTrusted(state.chain, "RSA");
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contended(TrustManagerState state) throws CertificateException {
+    state.trustManager.checkServerTrusted(state.chain, "RSA");
+  }
+}
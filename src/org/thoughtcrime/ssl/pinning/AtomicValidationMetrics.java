@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ValidationMetrics kept in atomic counters and a LatencyHistogram per
+ * phase.  Every update is a lock-free increment, so one instance can be
+ * shared by every PinningTrustManager in a process.
+ *
+ * <p>
+ * To use:
+ * <pre>
+ * AtomicValidationMetrics metrics = new AtomicValidationMetrics();
+ * trustManager.setMetrics(metrics);
+ * ...
+ * Log.w("Pinning", "p99 validation: " +
+ *       metrics.getLatency(ValidationMetrics.Phase.TOTAL).getPercentileMicros(99) + "us");
+ * </pre>
+ * </p>
+ */
+public class AtomicValidationMetrics implements ValidationMetrics {
+
+  private final AtomicLong         cacheHits   = new AtomicLong();
+  private final AtomicLong         cacheMisses = new AtomicLong();
+  private final AtomicLong         stalePins   = new AtomicLong();
+  private final AtomicLongArray    failures    = new AtomicLongArray(Failure.values().length);
+  private final LatencyHistogram[] latencies   = new LatencyHistogram[Phase.values().length];
+
+  public AtomicValidationMetrics() {
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  public void onCacheHit() {
+    cacheHits.incrementAndGet();
+  }
+
+  public void onCacheMiss() {
+    cacheMisses.incrementAndGet();
+  }
+
+  public void onPhase(Phase phase, long nanos) {
+    latencies[phase.ordinal()].record(nanos);
+  }
+
+  public void onFailure(Failure failure) {
+    failures.incrementAndGet(failure.ordinal());
+  }
+
+  public void onStalePins() {
+    stalePins.incrementAndGet();
+  }
+
+  public long getCacheHitCount() {
+    return cacheHits.get();
+  }
+
+  public long getCacheMissCount() {
+    return cacheMisses.get();
+  }
+
+  public long getStalePinCount() {
+    return stalePins.get();
+  }
+
+  public long getFailureCount(Failure failure) {
+    return failures.get(failure.ordinal());
+  }
+
+  public LatencyHistogram getLatency(Phase phase) {
+    return latencies[phase.ordinal()];
+  }
+
+  public void reset() {
+    cacheHits.set(0);
+    cacheMisses.set(0);
+    stalePins.set(0);
+
+    for (int i = 0; i < failures.length(); i++) {
+      failures.set(i, 0);
+    }
+
+    for (LatencyHistogram latency : latencies) {
+      latency.reset();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rewrites a file a few seconds after the data behind it changes, so that a
+ * burst of changes, like the chains validated while an app starts up, costs
+ * one write and one fsync rather than one each.
+ *
+ * <p>
+ * Every BackgroundWriter shares a single low priority daemon thread.  A
+ * change made while a write is in progress schedules another one.  A change
+ * made less than the delay before the process exits is lost, which only
+ * costs a cache entry.
+ * </p>
+ */
+abstract class BackgroundWriter {
+
+  static final long DELAY_MILLIS = 3 * 1000;
+
+  private static final ScheduledExecutorService EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "BackgroundWriter");
+          thread.setDaemon(true);
+          thread.setPriority(Thread.MIN_PRIORITY);
+
+          return thread;
+        }
+      });
+
+  private final File          file;
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  BackgroundWriter(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Writes the file once the delay has passed, unless a write is already
+   * waiting, which will pick up this change too.
+   */
+  public void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      EXECUTOR.schedule(new Runnable() {
+        public void run() {
+          scheduled.set(false);
+
+          try {
+            write();
+          } catch (IOException ioe) {
+            Logger.getLogger("BackgroundWriter").log(Level.WARNING, "Couldn't write " + file, ioe);
+          }
+        }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  protected abstract void write() throws IOException;
+}
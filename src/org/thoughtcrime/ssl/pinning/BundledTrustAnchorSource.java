@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources.NotFoundException;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The trust store bundled with this library, which is just the AOSP
+ * default.
+ *
+ * <p>
+ * It's compiled at build time from tools/anchor-index/cacerts.bks into a
+ * {@link TrustAnchorIndex} in res/raw, which is memory-mapped rather than parsed.  That
+ * needs the index to be stored uncompressed in the APK, which is what
+ * <code>aaptOptions { noCompress 'idx' }</code> is for; if it was compressed
+ * anyway, it's read into memory instead.
+ * </p>
+ */
+public class BundledTrustAnchorSource extends TrustAnchorSource {
+  private static final int TRUST_ANCHOR_INDEX_SIZE = 1024 * 160;
+
+  private final Context context;
+
+  public BundledTrustAnchorSource(Context context) {
+    this.context = context;
+  }
+
+  @Override
+  public List<X509Certificate> getCertificates() throws IOException {
+    final TrustAnchorIndex      index        = getIndex();
+    final List<X509Certificate> certificates = new ArrayList<X509Certificate>(index.size());
+
+    for (int i = 0; i < index.size(); i++) {
+      certificates.add(index.getCertificate(i));
+    }
+
+    return certificates;
+  }
+
+  @Override
+  TrustAnchorIndex getIndex() throws IOException {
+    return new TrustAnchorIndex(mapTrustAnchorIndex());
+  }
+
+  ByteBuffer mapTrustAnchorIndex() throws IOException {
+    final AssetFileDescriptor descriptor;
+
+    try {
+      descriptor = context.getResources().openRawResourceFd(R.raw.cacerts_index);
+    } catch (NotFoundException e) {
+      Log.w("BundledTrustAnchorSource", "cacerts_index.idx was packaged compressed, so it can't be mapped.  " +
+                                        "Add aaptOptions { noCompress 'idx' } to the app's build.");
+      return readTrustAnchorIndex();
+    }
+
+    try {
+      final FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY,
+                         descriptor.getStartOffset(), descriptor.getLength());
+    } finally {
+      try {
+        descriptor.close();
+      } catch (IOException ioe) {
+        Log.w("BundledTrustAnchorSource", ioe);
+      }
+    }
+  }
+
+  private ByteBuffer readTrustAnchorIndex() throws IOException {
+    final InputStream           in     = context.getResources().openRawResource(R.raw.cacerts_index);
+    final ByteArrayOutputStream out    = new ByteArrayOutputStream(TRUST_ANCHOR_INDEX_SIZE);
+    final byte[]                buffer = new byte[4096];
+
+    try {
+      int read;
+
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (IOException ioe) {
+        Log.w("BundledTrustAnchorSource", ioe);
+      }
+    }
+
+    return ByteBuffer.wrap(out.toByteArray());
+  }
+}
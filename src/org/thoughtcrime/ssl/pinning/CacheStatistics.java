@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+/**
+ * A point-in-time snapshot of a cache's counters, suitable for
+ * sizing a cache under real load.
+ */
+public class CacheStatistics {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final long expirationCount;
+  private final int  size;
+  private final int  capacity;
+
+  CacheStatistics(long hitCount, long missCount, long evictionCount,
+                  long expirationCount, int size, int capacity)
+  {
+    this.hitCount        = hitCount;
+    this.missCount       = missCount;
+    this.evictionCount   = evictionCount;
+    this.expirationCount = expirationCount;
+    this.size            = size;
+    this.capacity        = capacity;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return The number of entries dropped to make room for new ones.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return The number of entries dropped because they were looked up after expiring.
+   */
+  public long getExpirationCount() {
+    return expirationCount;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public double getHitRate() {
+    final long requests = hitCount + missCount;
+    return requests == 0 ? 0.0 : (double) hitCount / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStatistics[hits=" + hitCount + ", misses=" + missCount +
+           ", evictions=" + evictionCount + ", expirations=" + expirationCount +
+           ", size=" + size + "/" + capacity + "]";
+  }
+}
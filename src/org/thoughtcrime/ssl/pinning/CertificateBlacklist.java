@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Certificates that must never be trusted, however valid their path is:
+ * keys and serial numbers of certificates that were issued fraudulently or
+ * whose CA was compromised.
+ *
+ * <p>
+ * The platform blacklist is the one Android's TrustManager checks every
+ * path against: the same built-in public keys and serial numbers, plus the
+ * updates the platform keeps in /data/misc/keychain.  A public key is
+ * listed by the hex SHA-1 of its SubjectPublicKeyInfo, which is just a
+ * SHA-1 pin, so it's matched with a PinSet.
+ * </p>
+ */
+class CertificateBlacklist {
+
+  private static final String[] DEFAULT_PUBLIC_KEYS = {
+      // Android's CTS test CA.
+      "bae78e6bed65a2bf60ddedde7fd91e825865e93d",
+      // C=NL, O=DigiNotar, CN=DigiNotar Root CA
+      "410f36363258f30b347d12ce4863e433437806a8",
+      // CN=DigiNotar Cyber CA, issued by CN=GTE CyberTrust Global Root
+      "ba3e7bd38cd7e1e6b9cd4c219962e59d7a2f4e37",
+      // CN=DigiNotar Services 1024 CA, issued by CN=Entrust.net
+      "e23b8d105f87710a68d9248050ebefc627be4ca6",
+      // CN=DigiNotar PKIoverheid CA Organisatie - G2
+      "7b2e16bc39bcd72b456e9f055d1de615b74945db",
+      // CN=DigiNotar PKIoverheid CA Overheid en Bedrijven
+      "e8f91200c65cee16e039b9f883841661635f81c5",
+      // O=Digicert Sdn. Bhd., issued by CN=GTE CyberTrust Global Root
+      "0129bcd5b448ae8d2496d1c3e19723919088e152",
+      // CN=e-islem.kktcmerkezbankasi.org, issued by TURKTRUST
+      "5f3ab33d55007054bc5e3e5553cd8d8465d77c61",
+      // CN=*.EGO.GOV.TR, issued by TURKTRUST
+      "783333c9687df63377efceddd82efa9101913e8e",
+      // CN=AC DG Tresor SSL, issued by CN=AC DGTPE Signature Authentification
+      "3ecf4bbbe46096d514bb539bb913d77aa4ef31bf"
+  };
+
+  private static final String[] DEFAULT_SERIAL_NUMBERS = {
+      // The certificates Comodo issued fraudulently in March 2011.
+      "077a59bcd53459601ca6907267a6dd1c",
+      "047ecbe9fca55f7bd09eae36e10cae1e",
+      "d8f35f4eb7872b2dab0692e315382fb0",
+      "b0b7133ed096f9b56fae91c874bd3ac0",
+      "9239d5348f40d1695a745470e1f23f43",
+      "e9028b9578e415dc1a710a2b88154447",
+      "d7558fdaf5f1105bb213282b707729a3",
+      "f5c86af36162f13a64f54f6dc9587c06",
+      "392a434f0e07df1f8aa305de34e0c229",
+      "3e75ced46b693021218830ae86a82a71"
+  };
+
+  private static final String PUBLIC_KEY_FILE    = "misc/keychain/pubkey_blacklist.txt";
+  private static final String SERIAL_NUMBER_FILE = "misc/keychain/serial_blacklist.txt";
+
+  private static CertificateBlacklist platformBlacklist;
+
+  private final PinSet          publicKeys;
+  private final Set<BigInteger> serialNumbers;
+
+  /**
+   * @param publicKeys The hex SHA-1 hashes of blacklisted SubjectPublicKeyInfos.
+   * @param serialNumbers The hex serial numbers of blacklisted certificates.
+   */
+  CertificateBlacklist(String[] publicKeys, String[] serialNumbers) {
+    this.publicKeys    = new PinSet(publicKeys);
+    this.serialNumbers = new HashSet<BigInteger>();
+
+    for (String serialNumber : serialNumbers) {
+      this.serialNumbers.add(new BigInteger(serialNumber, 16));
+    }
+  }
+
+  /**
+   * @return The blacklist the platform's TrustManager applies.  It's read
+   *         once, the first time it's needed.
+   */
+  static synchronized CertificateBlacklist getPlatformBlacklist() {
+    if (platformBlacklist == null) {
+      final List<String> publicKeys    = new ArrayList<String>(Arrays.asList(DEFAULT_PUBLIC_KEYS));
+      final List<String> serialNumbers = new ArrayList<String>(Arrays.asList(DEFAULT_SERIAL_NUMBERS));
+      final String       androidData   = System.getenv("ANDROID_DATA");
+
+      if (androidData != null) {
+        publicKeys.addAll(readUpdates(new File(androidData, PUBLIC_KEY_FILE), 40));
+        serialNumbers.addAll(readUpdates(new File(androidData, SERIAL_NUMBER_FILE), 0));
+      }
+
+      platformBlacklist = new CertificateBlacklist(publicKeys.toArray(new String[publicKeys.size()]),
+                                                   serialNumbers.toArray(new String[serialNumbers.size()]));
+    }
+
+    return platformBlacklist;
+  }
+
+  /**
+   * @param path A cleaned chain, leaf first, up to and including its trust
+   *             anchor.
+   */
+  void check(List<X509Certificate> path) throws CertificateException {
+    final SpkiHasher hasher = SpkiHasher.getInstance();
+
+    for (X509Certificate certificate : path) {
+      if (serialNumbers.contains(certificate.getSerialNumber()) ||
+          hasher.isPinned(certificate, publicKeys))
+      {
+        throw new CertificateException("Certificate is blacklisted: " +
+                                       certificate.getSubjectX500Principal());
+      }
+    }
+  }
+
+  /**
+   * Reads one of the platform's comma separated lists of hex values.
+   *
+   * @param length The length every value has to have, or 0 for any.
+   */
+  private static List<String> readUpdates(File file, int length) {
+    if (!file.canRead()) {
+      return Collections.emptyList();
+    }
+
+    final List<String> values = new ArrayList<String>();
+
+    try {
+      final BufferedReader reader = new BufferedReader(new FileReader(file));
+
+      try {
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+          for (String value : line.split(",")) {
+            value = value.trim();
+
+            if (value.length() != 0 && (length == 0 || value.length() == length) && isHex(value)) {
+              values.add(value);
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ioe) {
+      Logger.getLogger("CertificateBlacklist").log(Level.WARNING, "Couldn't read " + file, ioe);
+    }
+
+    return values;
+  }
+
+  private static boolean isHex(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.digit(value.charAt(i), 16) == -1) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -17,16 +17,36 @@
 
 package org.thoughtcrime.ssl.pinning;
 
-import java.security.GeneralSecurityException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
 
 /**
  * Does the work of cleaning up a certificate chain by sifting out any
  * unrelated certificates and returning something that's signed from
  * EE to a trust anchor.
  *
+ * <p>
+ * The path is built from the end entity up.  Servers usually send their
+ * chain in order, so the next presented certificate is tried first.  When
+ * that isn't the issuer, because intermediates arrived out of order or
+ * unrelated certificates were mixed in, the presented certificates are
+ * indexed by subject and Subject Key Identifier, and the issuer is looked
+ * up there instead.  Each certificate is indexed once and used at most
+ * once, so building the path is linear in the length of the chain no
+ * matter what order it arrived in.
+ * </p>
+ * <p>
+ * If the presented certificates run out before a trust anchor is reached,
+ * intermediates learned from earlier chains can fill the gap.
+ * </p>
+ *
  * @author Moxie Marlinspike
  */
 class CertificateChainCleaner {
@@ -34,32 +54,90 @@ class CertificateChainCleaner {
   private CertificateChainCleaner() {}
 
   public static X509Certificate[] getCleanChain(X509Certificate[] chain,
-                                                SystemKeyStore systemKeyStore)
+                                                TrustAnchorStore systemKeyStore)
       throws CertificateException
   {
-    final LinkedList<X509Certificate> cleanChain = new LinkedList<X509Certificate>();
-    boolean trustedChain = false;
-    int i;
+    return getCleanChain(chain, systemKeyStore, null);
+  }
 
-    if (systemKeyStore.isTrustRoot(chain[0])) {
-      trustedChain = true;
-    }
+  /**
+   * @param intermediates Intermediates learned from earlier chains, to fill in
+   *                      any the server left out, or null to use only the
+   *                      presented certificates.
+   */
+  public static X509Certificate[] getCleanChain(X509Certificate[] chain,
+                                                TrustAnchorStore systemKeyStore,
+                                                IntermediateStore intermediates)
+      throws CertificateException
+  {
+    final LinkedList<X509Certificate> cleanChain   = new LinkedList<X509Certificate>();
+    final boolean[]                   used         = new boolean[chain.length];
+    IssuerIndex                       index        = null;
+    boolean                           trustedChain = false;
+    X509Certificate                   current      = chain[0];
+    int                               position     = 0;
+    int                               unused       = chain.length - 1;
+    X509Certificate                   trustRoot    = null;
+    boolean                           rootSearched = false;
+
+    cleanChain.add(current);
+    used[0] = true;
 
-    cleanChain.add(chain[0]);
+    while (true) {
+      final boolean anchored = systemKeyStore.isTrustRoot(current);
 
-    for (i = 1; i < chain.length; i++) {
-      if (systemKeyStore.isTrustRoot(chain[i])) {
+      if (anchored) {
         trustedChain = true;
       }
 
-      if (isValidLink(chain[i], chain[i - 1])) {
-        cleanChain.add(chain[i]);
+      int issuer = -1;
+
+      if (unused > 0) {
+        issuer = position + 1;
+
+        // The path has left the presented chain, or the chain isn't in order.
+        if (position == -1 || issuer == chain.length || used[issuer] || !isValidLink(chain[issuer], current)) {
+          if (index == null) {
+            index = new IssuerIndex(chain);
+          }
+
+          issuer = index.findIssuer(chain, current, used);
+        }
+      }
+
+      if (issuer != -1) {
+        current      = chain[issuer];
+        position     = issuer;
+        used[issuer] = true;
+        unused--;
+      } else if (intermediates != null && !anchored) {
+        // Only fill a gap that a trust anchor doesn't.
+        trustRoot    = systemKeyStore.getTrustRootFor(current);
+        rootSearched = true;
+
+        if (trustRoot != null) {
+          break;
+        }
+
+        final X509Certificate learned = intermediates.findIssuer(current);
+
+        if (learned == null || cleanChain.contains(learned)) {
+          break;
+        }
+
+        current      = learned;
+        position     = -1;
+        rootSearched = false;
       } else {
         break;
       }
+
+      cleanChain.add(current);
     }
 
-    final X509Certificate trustRoot = systemKeyStore.getTrustRootFor(chain[i - 1]);
+    if (!rootSearched) {
+      trustRoot = systemKeyStore.getTrustRootFor(current);
+    }
 
     if (trustRoot != null) {
       cleanChain.add(trustRoot);
@@ -78,12 +156,75 @@ class CertificateChainCleaner {
       return false;
     }
 
-    try {
-      child.verify(parent.getPublicKey());
-    } catch (GeneralSecurityException gse) {
-      return false;
+    return LinkVerificationCache.verify(child, parent);
+  }
+
+  /**
+   * The presented certificates after the end entity, by subject and by
+   * Subject Key Identifier.
+   */
+  private static final class IssuerIndex {
+
+    private final Map<X500Principal, List<Integer>> bySubject       = new HashMap<X500Principal, List<Integer>>();
+    private final Map<Long, List<Integer>>          byKeyIdentifier = new HashMap<Long, List<Integer>>();
+
+    IssuerIndex(X509Certificate[] chain) {
+      for (int i = 1; i < chain.length; i++) {
+        final byte[] keyIdentifier = KeyIdentifiers.getSubjectKeyIdentifier(chain[i]);
+
+        add(bySubject, chain[i].getSubjectX500Principal(), i);
+
+        if (keyIdentifier != null) {
+          add(byKeyIdentifier, KeyIdentifiers.hash(keyIdentifier), i);
+        }
+      }
+    }
+
+    /**
+     * @return The position of an unused certificate that issued the child,
+     *         or -1 if none was presented.
+     */
+    int findIssuer(X509Certificate[] chain, X509Certificate child, boolean[] used) {
+      // Follow the Authority Key Identifier straight to the issuing key, if there is one.
+      final byte[] authorityKeyIdentifier = KeyIdentifiers.getAuthorityKeyIdentifier(child);
+
+      if (authorityKeyIdentifier != null) {
+        final int issuer = findIssuer(byKeyIdentifier.get(KeyIdentifiers.hash(authorityKeyIdentifier)),
+                                      chain, child, used);
+
+        if (issuer != -1) {
+          return issuer;
+        }
+      }
+
+      return findIssuer(bySubject.get(child.getIssuerX500Principal()), chain, child, used);
     }
 
-    return true;
+    private static int findIssuer(List<Integer> candidates, X509Certificate[] chain,
+                                  X509Certificate child, boolean[] used)
+    {
+      if (candidates == null) {
+        return -1;
+      }
+
+      for (int candidate : candidates) {
+        if (!used[candidate] && isValidLink(chain[candidate], child)) {
+          return candidate;
+        }
+      }
+
+      return -1;
+    }
+
+    private static <K> void add(Map<K, List<Integer>> index, K key, int position) {
+      List<Integer> positions = index.get(key);
+
+      if (positions == null) {
+        positions = new ArrayList<Integer>(1);
+        index.put(key, positions);
+      }
+
+      positions.add(position);
+    }
   }
 }
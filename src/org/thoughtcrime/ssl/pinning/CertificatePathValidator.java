@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validates a cleaned certificate chain with PKIX, using only the trust
+ * anchor the chain ends at.
+ *
+ * <p>
+ * CertPathValidator checks signatures, validity periods, basic constraints,
+ * path length, CA key usage, and name constraints for every certificate
+ * between the end entity and the anchor.  On top of that, the checks the
+ * platform's TrustManager adds for the end entity: it has to be within its
+ * validity period even if it's a trust anchor itself, its key usage has to
+ * allow the key exchange being negotiated, and its extended key usage has to
+ * allow TLS server authentication.  Every key in the path has to be at least
+ * as strong as Android requires (1024 bit RSA and DSA, 160 bit EC), no
+ * signature in it may use MD2, MD4, MD5 or SHA-1, and no certificate in it,
+ * the anchor included, may be on the platform's blacklist.  Revocation isn't
+ * checked, just as the platform TrustManager doesn't.
+ * </p>
+ */
+class CertificatePathValidator {
+
+  private static final String SERVER_AUTH   = "1.3.6.1.5.5.7.3.1";
+  private static final String ANY_KEY_USAGE = "2.5.29.37.0";
+
+  private static final int KU_DIGITAL_SIGNATURE = 0;
+  private static final int KU_KEY_ENCIPHERMENT  = 2;
+  private static final int KU_KEY_AGREEMENT     = 4;
+
+  private static final int MIN_RSA_BITS = 1024;
+  private static final int MIN_DSA_BITS = 1024;
+  private static final int MIN_EC_BITS  = 160;
+
+  private static final Set<String> WEAK_SIGNATURE_ALGORITHMS = new HashSet<String>(Arrays.asList(
+      "1.2.840.113549.1.1.2",  // MD2withRSA
+      "1.2.840.113549.1.1.3",  // MD4withRSA
+      "1.2.840.113549.1.1.4",  // MD5withRSA
+      "1.2.840.113549.1.1.5",  // SHA1withRSA
+      "1.3.14.3.2.29",         // SHA1withRSA, as OIW numbered it
+      "1.2.840.10040.4.3",     // SHA1withDSA
+      "1.2.840.10045.4.1"      // SHA1withECDSA
+  ));
+
+  private CertificatePathValidator() {}
+
+  /**
+   * @param cleanChain A chain from CertificateChainCleaner, leaf first.
+   * @param authType The key exchange algorithm, as the platform passes it to
+   *                 checkServerTrusted, such as "RSA" or "ECDHE_RSA".
+   * @param blacklist The certificates to reject wherever they appear.
+   */
+  public static void validate(X509Certificate[] cleanChain, String authType, TrustAnchorStore systemKeyStore,
+                              CertificateBlacklist blacklist)
+      throws CertificateException
+  {
+    if (authType == null || authType.length() == 0) {
+      throw new IllegalArgumentException("No authentication type!");
+    }
+
+    int anchor = 0;
+
+    while (anchor < cleanChain.length && !systemKeyStore.isTrustRoot(cleanChain[anchor])) {
+      anchor++;
+    }
+
+    if (anchor == cleanChain.length) {
+      throw new CertificateException("Chain doesn't end at a trust anchor!");
+    }
+
+    blacklist.check(Arrays.asList(cleanChain).subList(0, anchor + 1));
+
+    if (anchor > 0) {
+      validatePath(Arrays.asList(cleanChain).subList(0, anchor), cleanChain[anchor]);
+    } else {
+      // There's no path for PKIX to check, but an anchor presented as the
+      // end entity still has to be current.
+      cleanChain[0].checkValidity();
+    }
+
+    for (int i = 0; i <= anchor; i++) {
+      checkKeyStrength(cleanChain[i], i < anchor);
+    }
+
+    checkServerKeyUsage(cleanChain[0], authType);
+    checkServerAuthUsage(cleanChain[0]);
+  }
+
+  private static void validatePath(List<X509Certificate> path, X509Certificate anchor)
+      throws CertificateException
+  {
+    try {
+      final CertPath       certPath   = CertificateFactory.getInstance("X509").generateCertPath(path);
+      final PKIXParameters parameters = new PKIXParameters(Collections.singleton(new TrustAnchor(anchor, null)));
+
+      parameters.setRevocationEnabled(false);
+      CertPathValidator.getInstance("PKIX").validate(certPath, parameters);
+    } catch (CertPathValidatorException cpve) {
+      throw new CertificateException(cpve);
+    } catch (InvalidAlgorithmParameterException iape) {
+      throw new CertificateException(iape);
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    }
+  }
+
+  /**
+   * @param signed Whether the certificate's signature is relied on, which
+   *               isn't the case for a trust anchor.
+   */
+  private static void checkKeyStrength(X509Certificate certificate, boolean signed)
+      throws CertificateException
+  {
+    final PublicKey key = certificate.getPublicKey();
+
+    if (key instanceof RSAPublicKey) {
+      checkKeyLength(((RSAPublicKey) key).getModulus().bitLength(), MIN_RSA_BITS);
+    } else if (key instanceof DSAPublicKey && ((DSAPublicKey) key).getParams() != null) {
+      checkKeyLength(((DSAPublicKey) key).getParams().getP().bitLength(), MIN_DSA_BITS);
+    } else if (key instanceof ECPublicKey) {
+      checkKeyLength(((ECPublicKey) key).getParams().getCurve().getField().getFieldSize(), MIN_EC_BITS);
+    }
+
+    if (signed && WEAK_SIGNATURE_ALGORITHMS.contains(certificate.getSigAlgOID())) {
+      throw new CertificateException("Certificate is signed with a weak algorithm: " +
+                                     certificate.getSigAlgName());
+    }
+  }
+
+  private static void checkKeyLength(int bits, int minimum) throws CertificateException {
+    if (bits < minimum) {
+      throw new CertificateException("Certificate key is too short: " + bits + " bits");
+    }
+  }
+
+  /**
+   * The key usage a server certificate needs for each kind of key exchange,
+   * as the platform's end entity checker requires it.
+   */
+  private static void checkServerKeyUsage(X509Certificate endEntity, String authType)
+      throws CertificateException
+  {
+    final boolean[] keyUsage = endEntity.getKeyUsage();
+
+    if (keyUsage == null) {
+      return;
+    }
+
+    final int required;
+
+    if (authType.equals("RSA")) {
+      required = KU_KEY_ENCIPHERMENT;
+    } else if (authType.equals("DH_RSA")   || authType.equals("DH_DSS") ||
+               authType.equals("ECDH_RSA") || authType.equals("ECDH_ECDSA"))
+    {
+      required = KU_KEY_AGREEMENT;
+    } else {
+      // Ephemeral key exchanges, and TLS 1.3, which doesn't name one.
+      required = KU_DIGITAL_SIGNATURE;
+    }
+
+    if (required >= keyUsage.length || !keyUsage[required]) {
+      throw new CertificateException("End entity certificate's key usage doesn't allow " +
+                                     authType + " key exchange!");
+    }
+  }
+
+  private static void checkServerAuthUsage(X509Certificate endEntity)
+      throws CertificateException
+  {
+    final List<String> extendedKeyUsage = endEntity.getExtendedKeyUsage();
+
+    if (extendedKeyUsage != null                &&
+        !extendedKeyUsage.contains(SERVER_AUTH) &&
+        !extendedKeyUsage.contains(ANY_KEY_USAGE))
+    {
+      throw new CertificateException("End entity certificate isn't valid for server authentication!");
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A compact identity for a presented certificate chain: the SHA-256
+ * of every certificate's encoding, in the order it was presented.
+ */
+final class ChainDigest {
+
+  private final byte[] digest;
+  private final int    hashCode;
+
+  private ChainDigest(byte[] digest) {
+    this.digest   = digest;
+    this.hashCode = ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16) |
+                    ((digest[2] & 0xff) << 8)  |  (digest[3] & 0xff);
+  }
+
+  static final int LENGTH = 32;
+
+  public static ChainDigest of(X509Certificate[] chain) throws CertificateException {
+    return of(chain, null);
+  }
+
+  /**
+   * @return The digest of a chain as presented by a particular host, which never
+   *         equals the digest of the same chain presented by another host, or of
+   *         the chain on its own.
+   */
+  public static ChainDigest of(X509Certificate[] chain, String host) throws CertificateException {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+      for (X509Certificate certificate : chain) {
+        digest.update(certificate.getEncoded());
+      }
+
+      if (host != null) {
+        // A DER certificate never begins with a zero byte, so this can't
+        // be confused with a longer chain.
+        digest.update((byte)0);
+        digest.update(host.toLowerCase(Locale.US).getBytes("UTF-8"));
+      }
+
+      return new ChainDigest(digest.digest());
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    } catch (UnsupportedEncodingException uee) {
+      throw new AssertionError(uee);
+    }
+  }
+
+  /**
+   * @return A digest previously returned by {@link #toByteArray()}.
+   */
+  static ChainDigest fromByteArray(byte[] digest) {
+    if (digest.length != LENGTH) {
+      throw new IllegalArgumentException("Not a chain digest: " + digest.length + " bytes");
+    }
+
+    return new ChainDigest(digest.clone());
+  }
+
+  byte[] toByteArray() {
+    return digest.clone();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof ChainDigest &&
+           Arrays.equals(digest, ((ChainDigest) other).digest);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * The outcome of validating one chain in a
+ * {@link PinningTrustManager#checkServerTrusted(java.util.List, String, java.util.concurrent.Executor)}
+ * batch.
+ */
+public final class ChainValidationResult {
+
+  private final X509Certificate[]    chain;
+  private final CertificateException failure;
+
+  ChainValidationResult(X509Certificate[] chain, CertificateException failure) {
+    this.chain   = chain;
+    this.failure = failure;
+  }
+
+  /**
+   * @return The chain, exactly as it was passed in.
+   */
+  public X509Certificate[] getChain() {
+    return chain;
+  }
+
+  public boolean isTrusted() {
+    return failure == null;
+  }
+
+  /**
+   * @return Why the chain was rejected, or null if it's trusted.
+   */
+  public CertificateException getFailure() {
+    return failure;
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+/**
+ * Just enough of a DER reader to pick fields out of encoded certificates
+ * without decoding them.  Offsets are into the caller's array, and every
+ * method returns -1 rather than throwing when the encoding doesn't parse.
+ */
+final class Der {
+
+  static final int TAG_OCTET_STRING = 0x04;
+  static final int TAG_SEQUENCE     = 0x30;
+
+  private Der() {}
+
+  /**
+   * @return The offset of the contents of the element at offset, or -1.
+   */
+  static int enter(byte[] der, int offset, int tag) {
+    if (offset >= der.length || (der[offset] & 0xff) != tag) {
+      return -1;
+    }
+
+    return contentsOffset(der, offset);
+  }
+
+  /**
+   * @return The offset of the element following the one at offset, or -1.
+   */
+  static int skip(byte[] der, int offset) {
+    final int contents = contentsOffset(der, offset);
+    if (contents == -1) {
+      return -1;
+    }
+
+    final long end = contents + (long) contentsLength(der, offset);
+    return end > der.length ? -1 : (int) end;
+  }
+
+  static int contentsOffset(byte[] der, int offset) {
+    if (offset + 1 >= der.length) {
+      return -1;
+    }
+
+    final int first = der[offset + 1] & 0xff;
+
+    if (first < 0x80) {
+      return offset + 2;
+    }
+
+    final int lengthBytes = first & 0x7f;
+
+    if (lengthBytes == 0 || lengthBytes > 3 || offset + 2 + lengthBytes > der.length) {
+      return -1;
+    }
+
+    return offset + 2 + lengthBytes;
+  }
+
+  static int contentsLength(byte[] der, int offset) {
+    final int first = der[offset + 1] & 0xff;
+
+    if (first < 0x80) {
+      return first;
+    }
+
+    int length = 0;
+
+    for (int i = 0; i < (first & 0x7f); i++) {
+      length = (length << 8) | (der[offset + 2 + i] & 0xff);
+    }
+
+    return length;
+  }
+}
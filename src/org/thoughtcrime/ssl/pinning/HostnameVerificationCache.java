@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.apache.http.conn.ssl.AbstractVerifier;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * Remembers which hosts an end entity certificate has already been verified
+ * for, and the names it was verified against.
+ *
+ * <p>
+ * Verifying a hostname means pulling the CNs and DNS subjectAltNames out of
+ * the peer's certificate before matching the host against them.  Here that
+ * happens once per certificate; later connections to a host the certificate
+ * already matched are answered from the cache, and connections to another
+ * host reuse the names.  Matching itself is still done by the wrapped
+ * verifier, so a cached answer is always one it gave.  Only successful
+ * verifications are remembered.
+ * </p>
+ */
+class HostnameVerificationCache {
+
+  private static final int MAX_HOSTS_PER_CERTIFICATE = 8;
+
+  private final X509HostnameVerifier            verifier;
+  private final int                             capacity;
+  private final Map<ChainDigest, VerifiedNames> certificates;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  public HostnameVerificationCache(X509HostnameVerifier verifier, final int capacity) {
+    this.verifier     = verifier;
+    this.capacity     = capacity;
+    this.certificates = new LinkedHashMap<ChainDigest, VerifiedNames>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ChainDigest, VerifiedNames> eldest) {
+        if (size() > capacity) {
+          evictionCount++;
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  public void verify(String host, X509Certificate endEntity) throws SSLException {
+    final String      hostKey = host.toLowerCase(Locale.US);
+    final ChainDigest digest;
+
+    try {
+      digest = ChainDigest.of(new X509Certificate[] {endEntity});
+    } catch (CertificateException ce) {
+      final SSLException exception = new SSLException(ce.getMessage());
+      exception.initCause(ce);
+      throw exception;
+    }
+
+    VerifiedNames names;
+
+    synchronized (this) {
+      names = certificates.get(digest);
+
+      if (names != null && names.hosts.contains(hostKey)) {
+        hitCount++;
+        return;
+      }
+
+      missCount++;
+    }
+
+    if (names == null) {
+      names = new VerifiedNames(AbstractVerifier.getCNs(endEntity),
+                                AbstractVerifier.getDNSSubjectAlts(endEntity));
+    }
+
+    verifier.verify(host, names.cns, names.subjectAlts);
+
+    synchronized (this) {
+      names.addHost(hostKey);
+      certificates.put(digest, names);
+    }
+  }
+
+  public synchronized void clear() {
+    certificates.clear();
+  }
+
+  public synchronized CacheStatistics getStatistics() {
+    return new CacheStatistics(hitCount, missCount, evictionCount, 0,
+                               certificates.size(), capacity);
+  }
+
+  private static class VerifiedNames {
+    private final String[]    cns;
+    private final String[]    subjectAlts;
+    private final Set<String> hosts = new LinkedHashSet<String>();
+
+    public VerifiedNames(String[] cns, String[] subjectAlts) {
+      this.cns         = cns;
+      this.subjectAlts = subjectAlts;
+    }
+
+    public void addHost(String host) {
+      if (hosts.size() >= MAX_HOSTS_PER_CERTIFICATE && !hosts.contains(host)) {
+        hosts.remove(hosts.iterator().next());
+      }
+
+      hosts.add(host);
+    }
+  }
+}
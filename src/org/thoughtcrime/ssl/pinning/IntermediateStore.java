@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Intermediate certificates that were part of a chain that passed
+ * validation, kept so that a server which later leaves one out of its
+ * chain can still be validated, without fetching anything.
+ *
+ * <p>
+ * A learned intermediate is only ever a candidate: it's used to fill a
+ * gap when its signature verifies the certificate below it, and the
+ * completed chain still has to validate like any other.  So the store
+ * can't make an untrusted chain trusted, and the copy on disk, if there
+ * is one, doesn't need to be authenticated.  A file that's been tampered
+ * with can at worst hold certificates that never verify anything.
+ * </p>
+ * <pre>
+ * int    magic ("PINI")
+ * int    version
+ * int    count
+ * count * { int    length
+ *           byte[] certificate   -- DER }
+ * </pre>
+ * <p>
+ * The least recently used intermediate is forgotten first.  There are only
+ * ever a handful, so looking one up just scans them.
+ * </p>
+ */
+class IntermediateStore {
+
+  static final String FILE_NAME = "learned-intermediates";
+
+  private static final int MAGIC                  = 0x50494e49;
+  private static final int VERSION                = 1;
+  private static final int MAX_CERTIFICATE_LENGTH = 64 * 1024;
+
+  private final File                                          file;
+  private final int                                           capacity;
+  private final LinkedHashMap<X509Certificate, X500Principal> intermediates;
+  private final BackgroundWriter                              writer;
+  private final Object                                        writeLock = new Object();
+
+  private long    completionCount;
+  private long    missCount;
+  private long    evictionCount;
+  private boolean loaded;
+
+  /**
+   * @param directory Where to keep a copy of the store, or null to keep it in memory only.
+   * @param capacity The maximum number of intermediates to remember.
+   */
+  public IntermediateStore(File directory, final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+    }
+
+    this.file          = directory == null ? null : new File(directory, FILE_NAME);
+    this.capacity      = capacity;
+    this.intermediates = new LinkedHashMap<X509Certificate, X500Principal>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<X509Certificate, X500Principal> eldest) {
+        if (size() > capacity) {
+          evictionCount++;
+          return true;
+        }
+
+        return false;
+      }
+    };
+    this.writer = new BackgroundWriter(file) {
+      @Override
+      protected void write() throws IOException {
+        IntermediateStore.this.write();
+      }
+    };
+  }
+
+  /**
+   * Remembers the intermediates in a chain that passed validation: every
+   * CA certificate between the end entity and the first trust anchor.
+   */
+  public void learn(X509Certificate[] cleanChain, TrustAnchorStore anchors) {
+    final List<X509Certificate> learned = new ArrayList<X509Certificate>(cleanChain.length);
+
+    for (int i = 1; i < cleanChain.length && !anchors.isTrustRoot(cleanChain[i]); i++) {
+      if (cleanChain[i].getBasicConstraints() != -1) {
+        learned.add(cleanChain[i]);
+      }
+    }
+
+    if (!learned.isEmpty()) {
+      add(learned);
+    }
+  }
+
+  private synchronized void add(List<X509Certificate> learned) {
+    boolean changed = false;
+
+    for (X509Certificate certificate : learned) {
+      if (intermediates.put(certificate, certificate.getSubjectX500Principal()) == null) {
+        changed = true;
+      }
+    }
+
+    if (changed && loaded) {
+      scheduleWrite();
+    }
+  }
+
+  /**
+   * @return A learned intermediate that issued the certificate, or null if
+   *         none did.
+   */
+  public X509Certificate findIssuer(X509Certificate child) {
+    for (X509Certificate candidate : getCandidates(child.getIssuerX500Principal())) {
+      if (LinkVerificationCache.verify(child, candidate)) {
+        recordLookup(candidate);
+        return candidate;
+      }
+    }
+
+    recordLookup(null);
+    return null;
+  }
+
+  private synchronized List<X509Certificate> getCandidates(X500Principal issuer) {
+    final List<X509Certificate> candidates = new ArrayList<X509Certificate>(1);
+
+    for (Map.Entry<X509Certificate, X500Principal> entry : intermediates.entrySet()) {
+      if (entry.getValue().equals(issuer)) {
+        candidates.add(entry.getKey());
+      }
+    }
+
+    return candidates;
+  }
+
+  private synchronized void recordLookup(X509Certificate issuer) {
+    if (issuer == null) {
+      missCount++;
+    } else {
+      completionCount++;
+      intermediates.get(issuer);
+    }
+  }
+
+  public synchronized int size() {
+    return intermediates.size();
+  }
+
+  /**
+   * @return How many gaps learned intermediates filled (hits), how many
+   *         they couldn't (misses), and how many intermediates were forgotten
+   *         to make room (evictions).
+   */
+  public synchronized CacheStatistics getStatistics() {
+    return new CacheStatistics(completionCount, missCount, evictionCount, 0,
+                               intermediates.size(), capacity);
+  }
+
+  /**
+   * Reads the copy on disk, if there is one, and starts keeping it up to
+   * date.  Intermediates learned before this returns are kept.
+   *
+   * @return The number of intermediates read.
+   */
+  public synchronized int load() {
+    final List<X509Certificate> restored = new ArrayList<X509Certificate>();
+
+    if (file == null) {
+      return 0;
+    }
+
+    try {
+      if (file.isFile()) {
+        read(restored);
+      }
+    } catch (IOException ioe) {
+      Logger.getLogger("IntermediateStore").log(Level.WARNING, "Couldn't read " + file, ioe);
+      restored.clear();
+    } catch (CertificateException ce) {
+      Logger.getLogger("IntermediateStore").log(Level.WARNING, "Couldn't read " + file, ce);
+      restored.clear();
+    }
+
+    for (X509Certificate certificate : restored) {
+      if (!intermediates.containsKey(certificate) && intermediates.size() < capacity) {
+        intermediates.put(certificate, certificate.getSubjectX500Principal());
+      }
+    }
+
+    loaded = true;
+
+    if (!intermediates.isEmpty()) {
+      scheduleWrite();
+    }
+
+    return restored.size();
+  }
+
+  public synchronized void clear() {
+    intermediates.clear();
+
+    if (loaded) {
+      scheduleWrite();
+    }
+  }
+
+  private void scheduleWrite() {
+    writer.schedule();
+  }
+
+  void write() throws IOException {
+    // Serialized, so an older snapshot can never replace a newer one.
+    synchronized (writeLock) {
+      PersistentChainCache.writeAtomically(file, serialize());
+    }
+  }
+
+  private synchronized byte[] serialize() throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream      out    = new DataOutputStream(buffer);
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(intermediates.size());
+
+    try {
+      for (X509Certificate certificate : intermediates.keySet()) {
+        final byte[] encoded = certificate.getEncoded();
+
+        out.writeInt(encoded.length);
+        out.write(encoded);
+      }
+    } catch (CertificateException ce) {
+      throw new AssertionError(ce);
+    }
+
+    return buffer.toByteArray();
+  }
+
+  private void read(List<X509Certificate> restored) throws IOException, CertificateException {
+    final long length = file.length();
+
+    if (length > (long) capacity * (MAX_CERTIFICATE_LENGTH + 4) + 12) {
+      return;
+    }
+
+    final byte[]             contents = PersistentChainCache.readFully(file, (int) length);
+    final DataInputStream    in       = new DataInputStream(new ByteArrayInputStream(contents));
+    final CertificateFactory factory  = CertificateFactory.getInstance("X509");
+
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      return;
+    }
+
+    final int count = in.readInt();
+
+    if (count < 0 || count > capacity) {
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      final int certificateLength = in.readInt();
+
+      if (certificateLength <= 0 || certificateLength > MAX_CERTIFICATE_LENGTH) {
+        throw new IOException("Bad certificate length: " + certificateLength);
+      }
+
+      final byte[] encoded = new byte[certificateLength];
+      in.readFully(encoded);
+
+      restored.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(encoded)));
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * Reads the Subject and Authority Key Identifier extensions, which let an
+ * issuer be found by its key rather than by trying every certificate that
+ * shares its subject.
+ */
+final class KeyIdentifiers {
+
+  private static final String SUBJECT_KEY_IDENTIFIER   = "2.5.29.14";
+  private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+  private static final int TAG_KEY_IDENTIFIER = 0x80;
+
+  private KeyIdentifiers() {}
+
+  /**
+   * @return The certificate's Subject Key Identifier, or null if it has none.
+   */
+  public static byte[] getSubjectKeyIdentifier(X509Certificate certificate) {
+    final byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+
+    if (extension == null) {
+      return null;
+    }
+
+    // OCTET STRING { SubjectKeyIdentifier ::= OCTET STRING }
+    return contents(extension, Der.enter(extension, 0, Der.TAG_OCTET_STRING), Der.TAG_OCTET_STRING);
+  }
+
+  /**
+   * @return The keyIdentifier field of the certificate's Authority Key Identifier,
+   *         or null if it has none.
+   */
+  public static byte[] getAuthorityKeyIdentifier(X509Certificate certificate) {
+    final byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+
+    if (extension == null) {
+      return null;
+    }
+
+    // OCTET STRING { AuthorityKeyIdentifier ::= SEQUENCE { [0] keyIdentifier OPTIONAL, ... } }
+    final int sequence = Der.enter(extension, 0, Der.TAG_OCTET_STRING);
+
+    if (sequence == -1) {
+      return null;
+    }
+
+    return contents(extension, Der.enter(extension, sequence, Der.TAG_SEQUENCE), TAG_KEY_IDENTIFIER);
+  }
+
+  /**
+   * A 64-bit FNV-1a hash of a key identifier, for indexing.
+   */
+  public static long hash(byte[] keyIdentifier) {
+    long hash = 0xcbf29ce484222325L;
+
+    for (byte b : keyIdentifier) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+
+    return hash;
+  }
+
+  private static byte[] contents(byte[] der, int offset, int tag) {
+    if (offset == -1) {
+      return null;
+    }
+
+    final int start = Der.enter(der, offset, tag);
+    final int end   = Der.skip(der, offset);
+
+    if (start == -1 || end == -1) {
+      return null;
+    }
+
+    return Arrays.copyOfRange(der, start, end);
+  }
+}
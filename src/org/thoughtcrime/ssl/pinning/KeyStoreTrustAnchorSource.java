@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Trust anchors read from the certificate entries of a KeyStore file.
+ */
+public class KeyStoreTrustAnchorSource extends TrustAnchorSource {
+
+  private final File   file;
+  private final String type;
+  private final char[] password;
+
+  /**
+   * @param file The KeyStore file.
+   * @param type The KeyStore type, for instance "JKS", "PKCS12", or "BKS".
+   * @param password The KeyStore's password, or null to skip its integrity check.
+   */
+  public KeyStoreTrustAnchorSource(File file, String type, char[] password) {
+    this.file     = file;
+    this.type     = type;
+    this.password = password == null ? null : password.clone();
+  }
+
+  /**
+   * @return The trust anchors of the JVM this is running on, from
+   *         $JAVA_HOME/lib/security/cacerts.
+   */
+  public static KeyStoreTrustAnchorSource forJdkCacerts() {
+    final String javaHome = System.getProperty("java.home");
+    File         cacerts  = new File(javaHome, "lib/security/cacerts");
+
+    if (!cacerts.isFile()) {
+      // Older JDKs keep it under jre/.
+      cacerts = new File(javaHome, "jre/lib/security/cacerts");
+    }
+
+    return new KeyStoreTrustAnchorSource(cacerts, KeyStore.getDefaultType(), null);
+  }
+
+  @Override
+  public List<X509Certificate> getCertificates() throws IOException, CertificateException {
+    final InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+    try {
+      final KeyStore keyStore = KeyStore.getInstance(type);
+      keyStore.load(in, password);
+
+      final List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+      final Enumeration<String>   aliases      = keyStore.aliases();
+
+      while (aliases.hasMoreElements()) {
+        final String alias = aliases.nextElement();
+
+        if (keyStore.isCertificateEntry(alias)) {
+          final Certificate certificate = keyStore.getCertificate(alias);
+
+          if (certificate instanceof X509Certificate) {
+            certificates.add((X509Certificate) certificate);
+          }
+        }
+      }
+
+      return certificates;
+    } catch (KeyStoreException kse) {
+      throw new IOException("Couldn't read " + file + ": " + kse.getMessage());
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IOException("Couldn't read " + file + ": " + nsae.getMessage());
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, bucketed by powers of two in
+ * microseconds.  Bucket 0 holds anything under a microsecond, and bucket
+ * <i>i</i> holds durations from 2<sup>i-1</sup> up to 2<sup>i</sup>
+ * microseconds, with the last bucket open-ended.  Recording is a couple of
+ * atomic increments, and reads don't block writers.
+ */
+public final class LatencyHistogram {
+
+  public static final int BUCKET_COUNT = 32;
+
+  private final AtomicLongArray buckets    = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong      totalNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    final long micros = Math.max(nanos, 0) / 1000;
+    final int  bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+
+    buckets.incrementAndGet(bucket);
+    totalNanos.addAndGet(nanos);
+  }
+
+  public long getCount() {
+    long count = 0;
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += buckets.get(i);
+    }
+
+    return count;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMeanNanos() {
+    final long count = getCount();
+    return count == 0 ? 0 : getTotalNanos() / count;
+  }
+
+  /**
+   * @return The number of durations recorded in each bucket.
+   */
+  public long[] getBucketCounts() {
+    final long[] counts = new long[BUCKET_COUNT];
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets.get(i);
+    }
+
+    return counts;
+  }
+
+  /**
+   * @param percentile A percentile between 0 and 100.
+   * @return The upper bound, in microseconds, of the bucket the percentile falls in,
+   *         or 0 when nothing has been recorded.
+   */
+  public long getPercentileMicros(double percentile) {
+    final long[] counts = getBucketCounts();
+    long         total  = 0;
+
+    for (long count : counts) {
+      total += count;
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    final long target = (long)Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+    long       seen   = 0;
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+
+      if (seen >= target && seen > 0) {
+        return 1L << i;
+      }
+    }
+
+    return 1L << (BUCKET_COUNT - 1);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+
+    totalNanos.set(0);
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide record of certificate signatures that have already been
+ * verified.
+ *
+ * <p>
+ * The same leaf-to-intermediate and intermediate-to-root links show up in
+ * nearly every handshake, across hosts and across trust managers, so once
+ * a child has been verified against an issuer's key, the result is kept.
+ * A link is identified by a SHA-256 over the issuer's SubjectPublicKeyInfo
+ * and the child's entire encoding.  The encoding includes the signature,
+ * so a certificate with the same contents but different signature bytes
+ * is never mistaken for one that verified.
+ * </p>
+ * <p>
+ * Only successful verifications are remembered, and the least recently
+ * used are forgotten first.
+ * </p>
+ */
+public final class LinkVerificationCache {
+
+  private static final int CAPACITY = 512;
+
+  private static final LinkVerificationCache instance = new LinkVerificationCache(CAPACITY);
+
+  private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException nsae) {
+        throw new AssertionError(nsae);
+      }
+    }
+  };
+
+  /**
+   * @return Hit, miss, and eviction counts for the process-wide link cache.
+   */
+  public static CacheStatistics getStatistics() {
+    return instance.statistics();
+  }
+
+  /**
+   * Forgets every verified link.
+   */
+  public static void clear() {
+    instance.clearEntries();
+  }
+
+  /**
+   * @return Whether child carries a valid signature from issuer's key.
+   */
+  static boolean verify(X509Certificate child, X509Certificate issuer) {
+    return instance.isVerified(child, issuer);
+  }
+
+  private final int                             capacity;
+  private final LinkedHashMap<LinkKey, Boolean> entries;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  private LinkVerificationCache(final int capacity) {
+    this.capacity = capacity;
+    this.entries  = new LinkedHashMap<LinkKey, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<LinkKey, Boolean> eldest) {
+        if (size() > capacity) {
+          evictionCount++;
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  private boolean isVerified(X509Certificate child, X509Certificate issuer) {
+    final LinkKey key;
+
+    try {
+      key = LinkKey.of(child, issuer);
+    } catch (CertificateEncodingException cee) {
+      return false;
+    }
+
+    synchronized (this) {
+      if (entries.get(key) != null) {
+        hitCount++;
+        return true;
+      }
+
+      missCount++;
+    }
+
+    try {
+      child.verify(issuer.getPublicKey());
+    } catch (GeneralSecurityException gse) {
+      return false;
+    }
+
+    synchronized (this) {
+      entries.put(key, Boolean.TRUE);
+    }
+
+    return true;
+  }
+
+  private synchronized CacheStatistics statistics() {
+    return new CacheStatistics(hitCount, missCount, evictionCount, 0, entries.size(), capacity);
+  }
+
+  private synchronized void clearEntries() {
+    entries.clear();
+  }
+
+  private static final class LinkKey {
+
+    private final byte[] digest;
+    private final int    hashCode;
+
+    private LinkKey(byte[] digest) {
+      this.digest   = digest;
+      this.hashCode = Arrays.hashCode(digest);
+    }
+
+    static LinkKey of(X509Certificate child, X509Certificate issuer)
+        throws CertificateEncodingException
+    {
+      final MessageDigest digest        = DIGESTS.get();
+      final byte[]        issuerEncoded = issuer.getEncoded();
+      final long          spki          = SpkiHasher.locateSubjectPublicKeyInfo(issuerEncoded);
+
+      if (spki == -1) {
+        digest.update(issuer.getPublicKey().getEncoded());
+      } else {
+        digest.update(issuerEncoded, (int) (spki >>> 32), (int) spki);
+      }
+
+      digest.update(child.getEncoded());
+
+      return new LinkKey(digest.digest());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof LinkKey && Arrays.equals(digest, ((LinkKey) other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
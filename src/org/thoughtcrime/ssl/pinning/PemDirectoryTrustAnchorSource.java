@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Trust anchors read from a directory of certificate files, such as
+ * /etc/ssl/certs.  Each file may hold any number of PEM or DER
+ * certificates; hidden files and subdirectories are skipped.
+ */
+public class PemDirectoryTrustAnchorSource extends TrustAnchorSource {
+
+  private final File directory;
+
+  public PemDirectoryTrustAnchorSource(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public List<X509Certificate> getCertificates() throws IOException, CertificateException {
+    final File[] files = directory.listFiles();
+
+    if (files == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+
+    // Sorted, so the same directory always produces the same index.
+    Arrays.sort(files);
+
+    // Directories like /etc/ssl/certs link the same certificate under several names.
+    final CertificateFactory   factory      = CertificateFactory.getInstance("X509");
+    final Set<X509Certificate> certificates = new LinkedHashSet<X509Certificate>();
+
+    for (File file : files) {
+      if (file.isFile() && !file.isHidden()) {
+        readCertificates(factory, file, certificates);
+      }
+    }
+
+    return new ArrayList<X509Certificate>(certificates);
+  }
+
+  private void readCertificates(CertificateFactory factory, File file, Set<X509Certificate> certificates)
+      throws IOException, CertificateException
+  {
+    final InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+    try {
+      final Collection<? extends Certificate> contents = factory.generateCertificates(in);
+
+      if (contents.isEmpty()) {
+        throw new CertificateException("No certificates found");
+      }
+
+      for (Certificate certificate : contents) {
+        certificates.add((X509Certificate) certificate);
+      }
+    } catch (CertificateException ce) {
+      throw new CertificateException("Couldn't read certificates from " + file, ce);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A copy of PinningTrustManager's validated chains on disk, so that a new
+ * process doesn't have to validate a chain that an earlier one already did.
+ *
+ * <p>
+ * The file records which pins and which trust anchors the chains were
+ * validated against, and is ignored if either has changed since.  It's
+ * authenticated with an HMAC, so a modified file is ignored too.  Entries
+ * expire with the leaf certificate (or the cache TTL) they were validated
+ * with.  Only chains the platform's TrustManager accepted are added, so a
+ * process can rely on them whichever ValidationMode it uses.
+ * </p>
+ * <pre>
+ * int    magic ("PINC")
+ * int    version
+ * byte[] binding     -- SHA-256(pin fingerprint, trust anchor fingerprint)
+ * int    count
+ * count * { byte[] chainDigest   -- 32 bytes
+ *           long   expiresAt }
+ * byte[] mac         -- HMAC-SHA256 of everything above
+ * </pre>
+ * <p>
+ * The file is rewritten in the background by a BackgroundWriter, a few
+ * seconds after new chains are added, so that a burst of them is written
+ * at once.
+ * </p>
+ */
+class PersistentChainCache {
+
+  static final String FILE_NAME     = "validated-chains";
+  static final String KEY_FILE_NAME = "validated-chains.key";
+
+  private static final int MAGIC          = 0x50494e43;
+  private static final int VERSION        = 1;
+  private static final int KEY_LENGTH     = 32;
+  private static final int BINDING_LENGTH = 32;
+  private static final int MAC_LENGTH     = 32;
+  private static final int HEADER_LENGTH  = 12 + BINDING_LENGTH;
+  private static final int ENTRY_LENGTH   = ChainDigest.LENGTH + 8;
+
+  private final File                             file;
+  private final byte[]                           key;
+  private final byte[]                           anchorFingerprint;
+  private final int                              capacity;
+  private final LinkedHashMap<ChainDigest, Long> entries;
+  private final BackgroundWriter                 writer;
+  private final Object                           writeLock = new Object();
+
+  private PinSet  pins;
+  private boolean loaded;
+
+  /**
+   * @param directory Where to keep the file.  This should be private to the app.
+   * @param key The HMAC key.
+   * @param anchors The trust anchors chains are validated against.
+   * @param capacity The maximum number of chains to remember.
+   */
+  public PersistentChainCache(File directory, byte[] key, TrustAnchorStore anchors, final int capacity) {
+    this.file              = new File(directory, FILE_NAME);
+    this.key               = key.clone();
+    this.anchorFingerprint = anchors.getFingerprint();
+    this.capacity          = capacity;
+    this.entries           = new LinkedHashMap<ChainDigest, Long>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ChainDigest, Long> eldest) {
+        return size() > capacity;
+      }
+    };
+    this.writer = new BackgroundWriter(file) {
+      @Override
+      protected void write() throws IOException {
+        PersistentChainCache.this.write();
+      }
+    };
+  }
+
+  /**
+   * Reads the HMAC key kept alongside the cache, generating it the first time.
+   */
+  public static byte[] getOrCreateKey(File directory) throws IOException {
+    final File keyFile = new File(directory, KEY_FILE_NAME);
+
+    if (keyFile.length() == KEY_LENGTH) {
+      return readFully(keyFile, KEY_LENGTH);
+    }
+
+    final byte[] key = new byte[KEY_LENGTH];
+    new SecureRandom().nextBytes(key);
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Couldn't create " + directory);
+    }
+
+    writeAtomically(keyFile, key);
+    return key;
+  }
+
+  /**
+   * Reads the file, if it was written with the same pins and trust anchors.
+   * Chains added before this returns are kept.
+   *
+   * @param pins The pins chains are currently validated against, or null for none.
+   * @return The unexpired chains that were read, and when each expires.
+   */
+  public synchronized Map<ChainDigest, Long> load(PinSet pins) {
+    final Map<ChainDigest, Long> restored = new LinkedHashMap<ChainDigest, Long>();
+
+    if (samePins(this.pins, pins) || entries.isEmpty()) {
+      this.pins = pins;
+
+      try {
+        read(pins, restored);
+      } catch (IOException ioe) {
+        Logger.getLogger("PersistentChainCache").log(Level.WARNING, "Couldn't read " + file, ioe);
+        restored.clear();
+      }
+
+      for (Map.Entry<ChainDigest, Long> entry : restored.entrySet()) {
+        if (!entries.containsKey(entry.getKey()) && entries.size() < capacity) {
+          entries.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    loaded = true;
+
+    if (!entries.isEmpty()) {
+      scheduleWrite();
+    }
+
+    return restored;
+  }
+
+  /**
+   * Remembers a chain that passed validation.
+   *
+   * @param pins The pins it was validated against, or null for none.  If these
+   *             differ from the last chain's, every earlier chain is forgotten.
+   */
+  public synchronized void add(ChainDigest chain, long expiresAt, PinSet pins) {
+    if (!samePins(this.pins, pins)) {
+      this.pins = pins;
+      entries.clear();
+    }
+
+    entries.put(chain, expiresAt);
+
+    if (loaded) {
+      scheduleWrite();
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+
+    if (loaded) {
+      scheduleWrite();
+    }
+  }
+
+  private void scheduleWrite() {
+    writer.schedule();
+  }
+
+  void write() throws IOException {
+    // Serialized, so an older snapshot can never replace a newer one.
+    synchronized (writeLock) {
+      writeAtomically(file, serialize());
+    }
+  }
+
+  private synchronized byte[] serialize() throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream      out    = new DataOutputStream(buffer);
+    final long                  now    = System.currentTimeMillis();
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.write(getBinding(pins));
+    out.writeInt(countUnexpired(now));
+
+    for (Map.Entry<ChainDigest, Long> entry : entries.entrySet()) {
+      if (entry.getValue() > now) {
+        out.write(entry.getKey().toByteArray());
+        out.writeLong(entry.getValue());
+      }
+    }
+
+    out.write(mac(buffer.toByteArray(), buffer.size()));
+    return buffer.toByteArray();
+  }
+
+  private void read(PinSet pins, Map<ChainDigest, Long> restored) throws IOException {
+    final long length = file.length();
+
+    if (length < HEADER_LENGTH + MAC_LENGTH ||
+        length > HEADER_LENGTH + MAC_LENGTH + (long) capacity * ENTRY_LENGTH)
+    {
+      return;
+    }
+
+    final byte[] contents = readFully(file, (int) length);
+    final int    macStart = contents.length - MAC_LENGTH;
+    final byte[] mac      = new byte[MAC_LENGTH];
+
+    System.arraycopy(contents, macStart, mac, 0, MAC_LENGTH);
+
+    if (!MessageDigest.isEqual(mac, mac(contents, macStart))) {
+      throw new IOException("Validated chain cache failed authentication, ignoring it.");
+    }
+
+    final DataInputStream in      = new DataInputStream(new ByteArrayInputStream(contents, 0, macStart));
+    final byte[]          binding = new byte[BINDING_LENGTH];
+
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      return;
+    }
+
+    in.readFully(binding);
+
+    if (!MessageDigest.isEqual(binding, getBinding(pins))) {
+      // The pins or trust anchors have changed since these were validated.
+      return;
+    }
+
+    final int  count = in.readInt();
+    final long now   = System.currentTimeMillis();
+
+    if (count < 0 || count > (macStart - HEADER_LENGTH) / ENTRY_LENGTH) {
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      final byte[] digest = new byte[ChainDigest.LENGTH];
+      in.readFully(digest);
+
+      final long expiresAt = in.readLong();
+
+      if (expiresAt > now) {
+        restored.put(ChainDigest.fromByteArray(digest), expiresAt);
+      }
+    }
+  }
+
+  private int countUnexpired(long now) {
+    int count = 0;
+
+    for (long expiresAt : entries.values()) {
+      if (expiresAt > now) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  private byte[] getBinding(PinSet pins) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+      digest.update(pins == null ? new byte[0] : pins.fingerprint());
+      digest.update(anchorFingerprint);
+
+      return digest.digest();
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    }
+  }
+
+  private byte[] mac(byte[] data, int length) {
+    try {
+      final Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key, "HmacSHA256"));
+      mac.update(data, 0, length);
+
+      return mac.doFinal();
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    } catch (InvalidKeyException ike) {
+      throw new AssertionError(ike);
+    }
+  }
+
+  private static boolean samePins(PinSet lhs, PinSet rhs) {
+    return lhs == null ? rhs == null : lhs.equals(rhs);
+  }
+
+  static byte[] readFully(File file, int length) throws IOException {
+    final DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+    try {
+      final byte[] contents = new byte[length];
+      in.readFully(contents);
+
+      return contents;
+    } finally {
+      in.close();
+    }
+  }
+
+  static void writeAtomically(File file, byte[] contents) throws IOException {
+    final File             temporary = new File(file.getPath() + ".tmp");
+    final FileOutputStream out       = new FileOutputStream(temporary);
+
+    try {
+      out.write(contents);
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      throw new IOException("Couldn't replace " + file);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable mapping from hostnames to the pins that connections to
+ * them have to match.
+ *
+ * <p>
+ * A rule's pattern is either a hostname ("api.example.com"), a hostname
+ * with a single-label wildcard ("*.example.com", which matches
+ * "www.example.com" but neither "example.com" nor "a.b.example.com"), or a
+ * hostname with a subdomain wildcard ("**.example.com", which matches
+ * "example.com" and any name below it).  A host that matches several rules
+ * may present a pin from any of them.  A host that matches no rule isn't
+ * pinned, and only has to pass normal certificate validation.
+ * </p>
+ * <p>
+ * Rules are kept in a trie keyed on hostname labels from right to left, so
+ * looking up a host walks one node per label no matter how many rules
+ * there are.
+ * </p>
+ * <p>
+ * To use:
+ * <pre>
+ * PinPolicy policy = new PinPolicy.Builder()
+ *     .add("api.example.com", new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"})
+ *     .add("**.example.org", new String[] {"sha256/trlUMquuV/4CDLK3T0+fkXPIxwivyecyrOIyeQR8bQU="})
+ *     .build();
+ * </pre>
+ * </p>
+ */
+public final class PinPolicy {
+
+  private static final String WILDCARD           = "*";
+  private static final String SUBDOMAIN_WILDCARD = "**";
+
+  private final Node root = new Node();
+  private final int  size;
+
+  private PinPolicy(List<Rule> rules) {
+    for (Rule rule : rules) {
+      final String[] labels = rule.labels;
+      final boolean  wild   = labels[0].equals(WILDCARD) || labels[0].equals(SUBDOMAIN_WILDCARD);
+
+      Node node = root;
+
+      for (int i = labels.length - 1; i >= (wild ? 1 : 0); i--) {
+        Node child = node.children.get(labels[i]);
+
+        if (child == null) {
+          child = new Node();
+          node.children.put(labels[i], child);
+        }
+
+        node = child;
+      }
+
+      if (!wild) {
+        node.exactPins.add(rule.pins);
+      } else if (labels[0].equals(WILDCARD)) {
+        node.wildcardPins.add(rule.pins);
+      } else {
+        node.subdomainPins.add(rule.pins);
+      }
+    }
+
+    this.size = rules.size();
+  }
+
+  /**
+   * @return The number of rules in this policy.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param host A hostname.
+   * @return The pin sets of every rule the host matches, of which a connection to
+   *         the host has to match at least one.  An empty list means the host
+   *         isn't pinned.
+   */
+  public List<PinSet> findPins(String host) {
+    final String[] labels = split(normalize(host));
+
+    if (labels == null) {
+      return Collections.emptyList();
+    }
+
+    final List<PinSet> pins = new LinkedList<PinSet>();
+
+    Node node      = root;
+    int  remaining = labels.length;
+
+    while (node != null) {
+      pins.addAll(node.subdomainPins);
+
+      if (remaining == 1) {
+        pins.addAll(node.wildcardPins);
+      }
+
+      if (remaining == 0) {
+        pins.addAll(node.exactPins);
+        break;
+      }
+
+      node = node.children.get(labels[--remaining]);
+    }
+
+    return pins;
+  }
+
+  private static String normalize(String host) {
+    String normalized = host.toLowerCase(Locale.US);
+
+    if (normalized.endsWith(".")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+
+    return normalized;
+  }
+
+  private static String[] split(String host) {
+    final List<String> labels = new LinkedList<String>();
+    int start = 0;
+
+    for (int i = 0; i <= host.length(); i++) {
+      if (i == host.length() || host.charAt(i) == '.') {
+        if (i == start) {
+          return null;
+        }
+
+        labels.add(host.substring(start, i));
+        start = i + 1;
+      }
+    }
+
+    return labels.toArray(new String[labels.size()]);
+  }
+
+  private static class Node {
+    private final Map<String, Node> children      = new HashMap<String, Node>();
+    private final List<PinSet>      exactPins     = new LinkedList<PinSet>();
+    private final List<PinSet>      wildcardPins  = new LinkedList<PinSet>();
+    private final List<PinSet>      subdomainPins = new LinkedList<PinSet>();
+  }
+
+  private static class Rule {
+    private final String[] labels;
+    private final PinSet   pins;
+
+    public Rule(String[] labels, PinSet pins) {
+      this.labels = labels;
+      this.pins   = pins;
+    }
+  }
+
+  /**
+   * Collects the rules for a PinPolicy.
+   */
+  public static class Builder {
+
+    private final List<Rule> rules = new LinkedList<Rule>();
+
+    /**
+     * @param pattern A hostname, optionally prefixed with "*." or "**.".
+     * @param pins An array of encoded pins, as accepted by {@link PinSet#PinSet(String[])}.
+     */
+    public Builder add(String pattern, String[] pins) {
+      return add(pattern, new PinSet(pins));
+    }
+
+    /**
+     * @param pattern A hostname, optionally prefixed with "*." or "**.".
+     * @param pins The pins connections to matching hosts have to match.
+     */
+    public Builder add(String pattern, PinSet pins) {
+      final String[] labels = split(normalize(pattern));
+
+      if (labels == null) {
+        throw new IllegalArgumentException("Malformed host pattern: " + pattern);
+      }
+
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i].indexOf('*') != -1 &&
+            (i != 0 || labels.length < 2 ||
+             !(labels[i].equals(WILDCARD) || labels[i].equals(SUBDOMAIN_WILDCARD))))
+        {
+          throw new IllegalArgumentException("Wildcards are only allowed as a leading \"*.\" or \"**.\": " + pattern);
+        }
+      }
+
+      rules.add(new Rule(labels, pins));
+      return this;
+    }
+
+    public PinPolicy build() {
+      return new PinPolicy(new LinkedList<Rule>(rules));
+    }
+  }
+}
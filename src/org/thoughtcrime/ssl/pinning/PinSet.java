@@ -0,0 +1,428 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An immutable set of certificate pins.
+ *
+ * <p>
+ * A pin is a SHA-1 or SHA-256 digest of a certificate's SubjectPublicKeyInfo,
+ * written either as hex ("40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd") or as
+ * base64 with an algorithm prefix ("sha256/trlUMquuV/4CDLK3T0+fkXPIxwivyecyrOIyeQR8bQU=").
+ * Both kinds can be mixed in one set.
+ * </p>
+ * <p>
+ * Pins are fixed-width, so rather than keeping a list of byte arrays around,
+ * each algorithm's digests are packed big-endian into a flat array of longs and
+ * indexed with open addressing.  Checking whether a digest is pinned costs a
+ * single probe in the common case, no matter how many backup pins are configured.
+ * </p>
+ */
+public final class PinSet {
+
+  static final int SHA1_LENGTH   = 20;
+  static final int SHA256_LENGTH = 32;
+
+  private static final String SHA1_PREFIX   = "sha1/";
+  private static final String SHA256_PREFIX = "sha256/";
+
+  private final DigestTable sha1;
+  private final DigestTable sha256;
+
+  /**
+   * Constructs a PinSet.
+   *
+   * @param pins An array of encoded pins.  A pin is a hex-encoded SHA-1 or SHA-256 hash of a
+   *             X.509 certificate's SubjectPublicKeyInfo, or a base64-encoded one prefixed
+   *             with "sha1/" or "sha256/".  A pin can be generated using the provided pin.py
+   *             script: python ./tools/pin.py certificate_file.pem
+   */
+  public PinSet(String[] pins) {
+    final List<byte[]> sha1Pins   = new LinkedList<byte[]>();
+    final List<byte[]> sha256Pins = new LinkedList<byte[]>();
+
+    for (String pin : pins) {
+      final byte[] digest = decode(pin);
+
+      if (digest.length == SHA1_LENGTH) {
+        sha1Pins.add(digest);
+      } else {
+        sha256Pins.add(digest);
+      }
+    }
+
+    this.sha1   = new DigestTable(SHA1_LENGTH, sha1Pins);
+    this.sha256 = new DigestTable(SHA256_LENGTH, sha256Pins);
+  }
+
+  /**
+   * @return The number of distinct pins in this set.
+   */
+  public int size() {
+    return sha1.size + sha256.size;
+  }
+
+  /**
+   * @param digest A SHA-1 or SHA-256 SubjectPublicKeyInfo digest.
+   * @return Whether the digest is one of the pins in this set.
+   */
+  public boolean contains(byte[] digest) {
+    switch (digest.length) {
+      case SHA1_LENGTH:   return sha1.contains(digest, 0);
+      case SHA256_LENGTH: return sha256.contains(digest, 0);
+      default:            return false;
+    }
+  }
+
+  boolean hasSha1Pins() {
+    return sha1.size != 0;
+  }
+
+  boolean hasSha256Pins() {
+    return sha256.size != 0;
+  }
+
+  boolean containsSha1(byte[] buffer, int offset) {
+    return sha1.contains(buffer, offset);
+  }
+
+  boolean containsSha256(byte[] buffer, int offset) {
+    return sha256.contains(buffer, offset);
+  }
+
+  /**
+   * @return A SHA-256 over every pin in this set, which is the same for any
+   *         two equal sets.
+   */
+  byte[] fingerprint() {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+      sha1.update(digest);
+      sha256.update(digest);
+
+      return digest.digest();
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof PinSet &&
+           sha1.equals(((PinSet) other).sha1) &&
+           sha256.equals(((PinSet) other).sha256);
+  }
+
+  @Override
+  public int hashCode() {
+    return sha1.hashCode() * 31 + sha256.hashCode();
+  }
+
+  private static byte[] decode(String pin) {
+    final byte[] digest;
+
+    if (pin.startsWith(SHA256_PREFIX)) {
+      digest = base64StringToByteArray(pin, SHA256_PREFIX.length());
+
+      if (digest == null || digest.length != SHA256_LENGTH) {
+        throw new IllegalArgumentException("Pin is not a base64-encoded SHA-256 digest: " + pin);
+      }
+    } else if (pin.startsWith(SHA1_PREFIX)) {
+      digest = base64StringToByteArray(pin, SHA1_PREFIX.length());
+
+      if (digest == null || digest.length != SHA1_LENGTH) {
+        throw new IllegalArgumentException("Pin is not a base64-encoded SHA-1 digest: " + pin);
+      }
+    } else {
+      digest = hexStringToByteArray(pin);
+
+      if (digest == null || (digest.length != SHA1_LENGTH && digest.length != SHA256_LENGTH)) {
+        throw new IllegalArgumentException("Pin is not a hex-encoded SHA-1 or SHA-256 digest: " + pin);
+      }
+    }
+
+    return digest;
+  }
+
+  private static byte[] hexStringToByteArray(String s) {
+    final int len = s.length();
+
+    if (len % 2 != 0) {
+      return null;
+    }
+
+    final byte[] data = new byte[len / 2];
+
+    for (int i = 0; i < len; i += 2) {
+      final int high = Character.digit(s.charAt(i), 16);
+      final int low  = Character.digit(s.charAt(i + 1), 16);
+
+      if (high == -1 || low == -1) {
+        return null;
+      }
+
+      data[i / 2] = (byte) ((high << 4) + low);
+    }
+
+    return data;
+  }
+
+  private static byte[] base64StringToByteArray(String s, int start) {
+    int end = s.length();
+
+    while (end > start && s.charAt(end - 1) == '=') {
+      end--;
+    }
+
+    if ((end - start) % 4 == 1 || s.length() - end > 2) {
+      return null;
+    }
+
+    final byte[] data     = new byte[(end - start) * 3 / 4];
+    int          buffer   = 0;
+    int          bits     = 0;
+    int          position = 0;
+
+    for (int i = start; i < end; i++) {
+      final int value = base64Value(s.charAt(i));
+
+      if (value == -1) {
+        return null;
+      }
+
+      buffer  = (buffer << 6) | value;
+      bits   += 6;
+
+      if (bits >= 8) {
+        bits            -= 8;
+        data[position++] = (byte) (buffer >> bits);
+      }
+    }
+
+    return data;
+  }
+
+  private static int base64Value(char c) {
+    if      (c >= 'A' && c <= 'Z') return c - 'A';
+    else if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+    else if (c >= '0' && c <= '9') return c - '0' + 52;
+    else if (c == '+')             return 62;
+    else if (c == '/')             return 63;
+    else                           return -1;
+  }
+
+  /**
+   * Open-addressed digests of a single fixed width, packed into longs.
+   */
+  private static final class DigestTable {
+
+    private final int       digestLength;
+    private final int       wordsPerDigest;
+    private final int       size;
+    private final int       mask;
+    private final long[]    table;
+    private final boolean[] occupied;
+
+    DigestTable(int digestLength, List<byte[]> digests) {
+      int slots = 2;
+
+      while (slots < digests.size() * 2) {
+        slots <<= 1;
+      }
+
+      this.digestLength   = digestLength;
+      this.wordsPerDigest = (digestLength + 7) / 8;
+      this.mask           = slots - 1;
+      this.table          = new long[slots * wordsPerDigest];
+      this.occupied       = new boolean[slots];
+
+      int size = 0;
+
+      for (byte[] digest : digests) {
+        if (insert(digest)) {
+          size++;
+        }
+      }
+
+      this.size = size;
+    }
+
+    boolean contains(byte[] buffer, int offset) {
+      if (size == 0) {
+        return false;
+      }
+
+      for (int slot = slotFor(readWord(buffer, offset, 0)); occupied[slot]; slot = (slot + 1) & mask) {
+        if (matches(slot, buffer, offset)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private boolean insert(byte[] digest) {
+      int slot = slotFor(readWord(digest, 0, 0));
+
+      for (; occupied[slot]; slot = (slot + 1) & mask) {
+        if (matches(slot, digest, 0)) {
+          return false;
+        }
+      }
+
+      for (int word = 0; word < wordsPerDigest; word++) {
+        table[slot * wordsPerDigest + word] = readWord(digest, 0, word);
+      }
+
+      occupied[slot] = true;
+      return true;
+    }
+
+    private boolean matches(int slot, byte[] buffer, int offset) {
+      final int base = slot * wordsPerDigest;
+
+      for (int word = 0; word < wordsPerDigest; word++) {
+        if (table[base + word] != readWord(buffer, offset, word)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean containsPacked(long[] words, int base) {
+      if (size == 0) {
+        return false;
+      }
+
+      for (int slot = slotFor(words[base]); occupied[slot]; slot = (slot + 1) & mask) {
+        int word = 0;
+
+        while (word < wordsPerDigest && table[slot * wordsPerDigest + word] == words[base + word]) {
+          word++;
+        }
+
+        if (word == wordsPerDigest) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    /**
+     * Feeds every digest in the table to a MessageDigest, in sorted order.
+     */
+    void update(MessageDigest digest) {
+      final long[][] digests = new long[size][];
+      int            count   = 0;
+
+      for (int slot = 0; slot < occupied.length; slot++) {
+        if (occupied[slot]) {
+          digests[count++] = Arrays.copyOfRange(table, slot * wordsPerDigest, (slot + 1) * wordsPerDigest);
+        }
+      }
+
+      Arrays.sort(digests, new Comparator<long[]>() {
+        public int compare(long[] lhs, long[] rhs) {
+          for (int word = 0; word < lhs.length; word++) {
+            if (lhs[word] != rhs[word]) {
+              // Unsigned, so the order matches the digest bytes.
+              return (lhs[word] ^ Long.MIN_VALUE) < (rhs[word] ^ Long.MIN_VALUE) ? -1 : 1;
+            }
+          }
+
+          return 0;
+        }
+      });
+
+      digest.update((byte) digestLength);
+
+      for (long[] words : digests) {
+        for (long word : words) {
+          for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (word >>> shift));
+          }
+        }
+      }
+    }
+
+    private int slotFor(long first) {
+      // The digest bytes are already uniformly distributed.
+      return (int) (first ^ (first >>> 32)) & mask;
+    }
+
+    private long readWord(byte[] buffer, int offset, int word) {
+      final int start = word * 8;
+      final int end   = Math.min(start + 8, digestLength);
+      long      value = 0;
+
+      for (int i = start; i < end; i++) {
+        value = (value << 8) | (buffer[offset + i] & 0xff);
+      }
+
+      return value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof DigestTable)) {
+        return false;
+      }
+
+      final DigestTable that = (DigestTable) other;
+
+      if (this.digestLength != that.digestLength || this.size != that.size) {
+        return false;
+      }
+
+      for (int slot = 0; slot < occupied.length; slot++) {
+        if (occupied[slot] && !that.containsPacked(this.table, slot * wordsPerDigest)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      // Order-independent, so sets built from the same pins in any order agree.
+      int hashCode = size;
+
+      for (int slot = 0; slot < occupied.length; slot++) {
+        if (occupied[slot]) {
+          for (int word = 0; word < wordsPerDigest; word++) {
+            final long value = table[slot * wordsPerDigest + word];
+            hashCode += (int) (value ^ (value >>> 32)) * (31 * word + 1);
+          }
+        }
+      }
+
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import android.content.Context;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates client-mode SSLEngines that validate their peers with a
+ * PinningTrustManager, for non-blocking clients built on SocketChannels
+ * and selectors rather than a thread per socket.
+ *
+ * <p>
+ * The engine's trust manager validates the chain and enforces any global pins
+ * during the handshake, so a chain without them never completes one, whether
+ * or not the session is verified afterwards.  Strict hostname verification and
+ * per-host pins need the peer's hostname, so every engine has to be created
+ * for one, and once the engine reports that its handshake has FINISHED, and
+ * before any application data is sent, the client calls
+ * {@link #verifySession(SSLEngine)}:
+ * <pre>
+ * SSLEngine engine = engineFactory.createSSLEngine("www.google.com", 443);
+ * ...
+ * SSLEngineResult result = engine.unwrap(networkBuffer, applicationBuffer);
+ *
+ * if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+ *   engineFactory.verifySession(engine);
+ * }
+ * </pre>
+ * </p>
+ */
+public class PinningSSLEngineFactory {
+
+  private final PinningTrustManager pinningTrustManager;
+  private final SSLContext          pinningSslContext;
+  private final SessionVerifier     sessionVerifier;
+
+  private SSLContext standaloneSslContext;
+
+  /**
+   * Constructs a PinningSSLEngineFactory with a set of valid pins.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+  public PinningSSLEngineFactory(Context context, PinSet pins, long enforceUntilTimestampMillis)
+      throws KeyManagementException, NoSuchAlgorithmException
+  {
+    this(new PinningTrustManager(SystemKeyStore.getInstance(context), pins, enforceUntilTimestampMillis));
+  }
+
+  /**
+   * Constructs a PinningSSLEngineFactory that pins each host according to a policy.
+   *
+   * @param policy The pins each host's certificate chain has to match.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+  public PinningSSLEngineFactory(Context context, PinPolicy policy, long enforceUntilTimestampMillis)
+      throws KeyManagementException, NoSuchAlgorithmException
+  {
+    this(new PinningTrustManager(SystemKeyStore.getInstance(context), policy, enforceUntilTimestampMillis));
+  }
+
+  /**
+   * Constructs a PinningSSLEngineFactory around an existing PinningTrustManager, which may
+   * also back a PinningSSLSocketFactory.
+   */
+  public PinningSSLEngineFactory(PinningTrustManager pinningTrustManager)
+      throws KeyManagementException, NoSuchAlgorithmException
+  {
+    this.pinningTrustManager = pinningTrustManager;
+    this.pinningSslContext   = SSLContext.getInstance("TLS");
+    this.pinningSslContext.init(null, new TrustManager[] {pinningTrustManager.getHandshakeTrustManager()}, null);
+    this.sessionVerifier = new SessionVerifier(pinningTrustManager);
+  }
+
+  /**
+   * @param host The hostname the engine will connect to.  It's used for session
+   *             resumption, hostname verification, and per-host pins.
+   * @param port The port the engine will connect to.
+   * @return A client-mode SSLEngine.
+   * @throws IllegalArgumentException If there's no host, since the session
+   *                                  couldn't be verified.
+   */
+  public SSLEngine createSSLEngine(String host, int port) {
+    if (host == null) {
+      throw new IllegalArgumentException("An engine needs a host to verify the session for!");
+    }
+
+    final SSLEngine engine = pinningSslContext.createSSLEngine(host, port);
+    engine.setUseClientMode(true);
+
+    return engine;
+  }
+
+  /**
+   * Finishes validating an engine's newly established session: strict hostname
+   * verification against the host the engine was created for, and that host's
+   * pins when this factory has a PinPolicy.  Resumed sessions that were already
+   * verified for the host are accepted immediately.
+   *
+   * @param engine An engine from {@link #createSSLEngine(String, int)} that has
+   *               finished its handshake.
+   * @throws IOException If the session mustn't be used.  The engine should be closed.
+   */
+  public void verifySession(SSLEngine engine) throws IOException {
+    final SSLSession session = engine.getSession();
+    final String     host    = engine.getPeerHost();
+
+    if (host == null) {
+      throw new IllegalArgumentException("Engine wasn't created for a host!");
+    }
+
+    sessionVerifier.verify(host, session);
+  }
+
+  /**
+   * @return An SSLContext for clients that can't call {@link #verifySession(SSLEngine)}.
+   *         It shares this factory's pinning trust manager, but not its TLS session
+   *         cache, and doesn't do hostname verification.
+   * @throws IllegalStateException If this factory pins hosts with a PinPolicy, which
+   *                               a plain SSLContext can't enforce.
+   */
+  public synchronized SSLContext getSSLContext() {
+    if (pinningTrustManager.hasPinPolicy()) {
+      throw new IllegalStateException("A pin policy can't be enforced by a plain SSLContext!");
+    }
+
+    if (standaloneSslContext == null) {
+      standaloneSslContext = createStandaloneSslContext(pinningTrustManager);
+    }
+
+    return standaloneSslContext;
+  }
+
+  private static SSLContext createStandaloneSslContext(PinningTrustManager pinningTrustManager) {
+    try {
+      final SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[] {pinningTrustManager}, null);
+      pinningTrustManager.addUnverifiedSessionContext(sslContext.getClientSessionContext());
+
+      return sslContext;
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    } catch (KeyManagementException kme) {
+      throw new AssertionError(kme);
+    }
+  }
+
+  /**
+   * @param size The maximum number of cached sessions, or 0 for no limit.
+   */
+  public void setSessionCacheSize(int size) {
+    pinningSslContext.getClientSessionContext().setSessionCacheSize(size);
+  }
+
+  /**
+   * @param seconds The session lifetime in seconds, or 0 for no limit.
+   */
+  public void setSessionTimeout(int seconds) {
+    pinningSslContext.getClientSessionContext().setSessionTimeout(seconds);
+  }
+
+  /**
+   * @return A snapshot of resumed (hits) and fully negotiated (misses) sessions.
+   */
+  public CacheStatistics getSessionStatistics() {
+    return sessionVerifier.getSessionStatistics(pinningSslContext.getClientSessionContext());
+  }
+
+  public CacheStatistics getHostnameVerificationStatistics() {
+    return sessionVerifier.getHostnameVerificationStatistics();
+  }
+}
@@ -19,15 +19,25 @@ package org.thoughtcrime.ssl.pinning;
 
 import android.content.Context;
 
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.DefaultedHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -35,6 +45,9 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A standard Apache SSL Socket Factory that uses an pinning trust manager.
@@ -60,15 +73,23 @@ import java.security.UnrecoverableKeyException;
  */
 public class PinningSSLSocketFactory extends SSLSocketFactory {
 
+  public static final int DEFAULT_PREWARM_TIMEOUT_MILLIS = 10 * 1000;
+
+  private final PinningTrustManager            pinningTrustManager;
+  private final SSLContext                     pinningSslContext;
   private final javax.net.ssl.SSLSocketFactory pinningSocketFactory;
+  private final SessionVerifier                sessionVerifier;
+
+  private SSLContext standaloneSslContext;
 
   /**
    * Constructs a PinningSSLSocketFactory with a set of valid pins.
    *
    * @param pins An array of encoded pins to match a seen certificate
    *             chain against. A pin is a hex-encoded hash of a X.509 certificate's
-   *             SubjectPublicKeyInfo. A pin can be generated using the provided pin.py
-   *             script: python ./tools/pin.py certificate_file.pem
+   *             SubjectPublicKeyInfo, or a base64 one prefixed with "sha256/" or "sha1/".
+   *             Both SHA-1 and SHA-256 hashes are accepted. A pin can be generated
+   *             using the provided pin.py script: python ./tools/pin.py certificate_file.pem
    *
    * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
    *                                    enforced.  Normal non-pinned certificate validation
@@ -80,14 +101,239 @@ public class PinningSSLSocketFactory extends SSLSocketFactory {
       throws UnrecoverableKeyException, KeyManagementException,
              NoSuchAlgorithmException, KeyStoreException
   {
-    super(null);
+    this(context, new PinSet(pins), enforceUntilTimestampMillis);
+  }
+
+  /**
+   * Constructs a PinningSSLSocketFactory with a set of valid pins.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+
+  public PinningSSLSocketFactory(Context context, PinSet pins, long enforceUntilTimestampMillis)
+      throws UnrecoverableKeyException, KeyManagementException,
+             NoSuchAlgorithmException, KeyStoreException
+  {
+    this(new PinningTrustManager(SystemKeyStore.getInstance(context), pins, enforceUntilTimestampMillis));
+  }
 
-    final SystemKeyStore keyStore             = SystemKeyStore.getInstance(context);
-    final SSLContext pinningSslContext        = SSLContext.getInstance(TLS);
-    final TrustManager[] pinningTrustManagers = initializePinningTrustManagers(keyStore, pins, enforceUntilTimestampMillis);
+  /**
+   * Constructs a PinningSSLSocketFactory that pins each host according to a policy.
+   * A single factory, and a single TLS session cache, can serve every pinned host.
+   *
+   * @param policy The pins each host's certificate chain has to match.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+
+  public PinningSSLSocketFactory(Context context, PinPolicy policy, long enforceUntilTimestampMillis)
+      throws UnrecoverableKeyException, KeyManagementException,
+             NoSuchAlgorithmException, KeyStoreException
+  {
+    this(new PinningTrustManager(SystemKeyStore.getInstance(context), policy, enforceUntilTimestampMillis));
+  }
 
-    pinningSslContext.init(null, pinningTrustManagers, null);
+  /**
+   * Constructs a PinningSSLSocketFactory around an existing PinningTrustManager, so that
+   * it shares that trust manager's rules and validated chain cache with anything else
+   * using it, such as a PinningSSLEngineFactory.
+   */
+
+  public PinningSSLSocketFactory(PinningTrustManager pinningTrustManager)
+      throws UnrecoverableKeyException, KeyManagementException,
+             NoSuchAlgorithmException, KeyStoreException
+  {
+    super(null);
+
+    // Every socket from this context goes through verifySession() before
+    // it's used, which is where a PinPolicy's host pins are checked.
+    this.pinningTrustManager = pinningTrustManager;
+    this.pinningSslContext   = SSLContext.getInstance(TLS);
+    this.pinningSslContext.init(null, new TrustManager[] {pinningTrustManager.getHandshakeTrustManager()}, null);
     this.pinningSocketFactory = pinningSslContext.getSocketFactory();
+    this.sessionVerifier      = new SessionVerifier(pinningTrustManager);
+  }
+
+  /**
+   * @return An SSLContext for HttpsURLConnection and other clients that take a plain
+   *         javax.net.ssl SSLSocketFactory.  Sockets from it share this factory's
+   *         pinning trust manager and validated chain cache, and one TLS session
+   *         cache of their own.
+   * @throws IllegalStateException If this factory pins hosts with a PinPolicy, which
+   *                               a plain SSLSocketFactory can't enforce.
+   */
+  public synchronized SSLContext getSSLContext() {
+    if (pinningTrustManager.hasPinPolicy()) {
+      throw new IllegalStateException("A pin policy can't be enforced by a plain SSLContext!");
+    }
+
+    if (standaloneSslContext == null) {
+      standaloneSslContext = createStandaloneSslContext(pinningTrustManager);
+    }
+
+    return standaloneSslContext;
+  }
+
+  /**
+   * Sets how many TLS sessions are kept for resumption.
+   *
+   * @param size The maximum number of cached sessions, or 0 for no limit.
+   */
+  public void setSessionCacheSize(int size) {
+    pinningSslContext.getClientSessionContext().setSessionCacheSize(size);
+  }
+
+  /**
+   * Sets how long a TLS session may be resumed after it's established.
+   *
+   * @param seconds The session lifetime in seconds, or 0 for no limit.
+   */
+  public void setSessionTimeout(int seconds) {
+    pinningSslContext.getClientSessionContext().setSessionTimeout(seconds);
+  }
+
+  /**
+   * @return A snapshot of how many connections resumed an already verified TLS session
+   *         (hits), how many needed a full handshake (misses), and how many sessions are
+   *         currently cached.  The capacity is 0 when the session cache is unbounded.
+   */
+  public CacheStatistics getSessionStatistics() {
+    return sessionVerifier.getSessionStatistics(pinningSslContext.getClientSessionContext());
+  }
+
+  /**
+   * @return A snapshot of how often strict hostname verification was answered from the
+   *         cache of certificates already verified for a host (hits), and how often
+   *         it had to match the host against the certificate's names (misses).
+   */
+  public CacheStatistics getHostnameVerificationStatistics() {
+    return sessionVerifier.getHostnameVerificationStatistics();
+  }
+
+  /**
+   * Connects to each host in the background, with connect and read timeouts
+   * of {@link #DEFAULT_PREWARM_TIMEOUT_MILLIS}.  See {@link #prewarm(List, int, int, int)}.
+   */
+  public Future<List<PrewarmResult>> prewarm(List<String> hosts, int concurrency) {
+    return prewarm(hosts, concurrency, DEFAULT_PREWARM_TIMEOUT_MILLIS, DEFAULT_PREWARM_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Connects to each host in the background, so that the first real request
+   * to it doesn't have to wait for DNS, TCP, a full TLS handshake, and chain
+   * validation one after another.  Each connection is closed once its
+   * handshake has been verified, leaving the TLS session and the validated
+   * chain behind in this factory's caches.
+   *
+   * @param hosts The hosts to connect to, on port 443.
+   * @param concurrency The most hosts to connect to at once.
+   * @param connectTimeoutMillis How long to wait for each TCP connection.  This
+   *                             has to be bounded, or one unreachable host could
+   *                             hold up its share of the others forever.
+   * @param readTimeoutMillis How long to wait for each read during the handshake.
+   * @return A Future that completes with how long each host took to warm up,
+   *         or why it couldn't be, in the order they were given.
+   */
+  public Future<List<PrewarmResult>> prewarm(List<String> hosts, int concurrency,
+                                             int connectTimeoutMillis, int readTimeoutMillis)
+  {
+    if (connectTimeoutMillis <= 0 || readTimeoutMillis <= 0) {
+      throw new IllegalArgumentException("Prewarm timeouts must be positive!");
+    }
+
+    final HttpParams params = new BasicHttpParams();
+
+    HttpConnectionParams.setConnectionTimeout(params, connectTimeoutMillis);
+    HttpConnectionParams.setSoTimeout(params, readTimeoutMillis);
+
+    return new Prewarmer() {
+      @Override
+      protected void warm(String host) throws IOException {
+        connectSocket(null, host, 443, null, 0, params).close();
+      }
+    }.start(hosts, concurrency);
+  }
+
+  /**
+   * Connects to each host in the background, like {@link #prewarm(List, int)},
+   * and then parks each connection in an HttpClient's pool, so that the first
+   * request to the host can use it straight away.  The client's "https" scheme
+   * has to use this factory.
+   *
+   * <p>
+   * The client's connection request, connect, and socket timeouts apply, and
+   * any of them that's unbounded is {@link #DEFAULT_PREWARM_TIMEOUT_MILLIS}
+   * instead.  A host whose route has no free connection before the request
+   * timeout is reported as a failure.
+   * </p>
+   *
+   * @param hosts The hosts to connect to, on port 443.
+   * @param concurrency The most hosts to connect to at once.
+   * @param client The client whose connection pool the connections go into.
+   * @return A Future that completes with how long each host took to warm up,
+   *         or why it couldn't be, in the order they were given.
+   */
+  public Future<List<PrewarmResult>> prewarm(List<String> hosts, int concurrency, HttpClient client) {
+    final ClientConnectionManager pool        = client.getConnectionManager();
+    final HttpParams              params      = getBoundedParams(client.getParams());
+    final long                    poolTimeout = ConnManagerParams.getTimeout(client.getParams());
+    final long                    waitMillis  = poolTimeout > 0 ? poolTimeout : DEFAULT_PREWARM_TIMEOUT_MILLIS;
+
+    if (pool.getSchemeRegistry().getScheme("https").getSocketFactory() != this) {
+      throw new IllegalArgumentException("Client doesn't use this socket factory for https!");
+    }
+
+    return new Prewarmer() {
+      @Override
+      protected void warm(String host) throws IOException {
+        final HttpRoute               route = new HttpRoute(new HttpHost(host, 443, "https"));
+        final ManagedClientConnection connection;
+
+        try {
+          // With more hosts in flight than the route allows connections, this
+          // waits for one to free up, and throws ConnectionPoolTimeoutException
+          // if none does in time.
+          connection = pool.requestConnection(route, null).getConnection(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for a pooled connection.");
+        }
+
+        try {
+          if (!connection.isOpen()) {
+            connection.open(route, new BasicHttpContext(), params);
+          }
+
+          // Only a connection marked reusable is kept when it's released.
+          connection.markReusable();
+        } finally {
+          pool.releaseConnection(connection, 0, TimeUnit.MILLISECONDS);
+        }
+      }
+    }.start(hosts, concurrency);
+  }
+
+  /**
+   * @return The client's parameters, with {@link #DEFAULT_PREWARM_TIMEOUT_MILLIS}
+   *         in place of an unbounded connect or socket timeout.  The client sets
+   *         its own socket timeout again for each request on the connection.
+   */
+  private static HttpParams getBoundedParams(HttpParams clientParams) {
+    final HttpParams bounded = new BasicHttpParams();
+
+    if (HttpConnectionParams.getConnectionTimeout(clientParams) <= 0) {
+      HttpConnectionParams.setConnectionTimeout(bounded, DEFAULT_PREWARM_TIMEOUT_MILLIS);
+    }
+
+    if (HttpConnectionParams.getSoTimeout(clientParams) <= 0) {
+      HttpConnectionParams.setSoTimeout(bounded, DEFAULT_PREWARM_TIMEOUT_MILLIS);
+    }
+
+    return new DefaultedHttpParams(bounded, clientParams);
   }
 
   @Override
@@ -117,7 +363,7 @@ public class PinningSSLSocketFactory extends SSLSocketFactory {
     sslSock.setSoTimeout(soTimeout);
 
     try {
-      SSLSocketFactory.STRICT_HOSTNAME_VERIFIER.verify(host, sslSock);
+      verifySession(host, sslSock);
     } catch (IOException iox) {
       try {
         sslSock.close();
@@ -139,7 +385,7 @@ public class PinningSSLSocketFactory extends SSLSocketFactory {
     }
 
     final SSLSocket sslSocket = (SSLSocket) pinningSocketFactory.createSocket(socket, host, port, autoClose);
-    SSLSocketFactory.STRICT_HOSTNAME_VERIFIER.verify(host, sslSocket);
+    verifySession(host, sslSocket);
     return sslSocket;
   }
 
@@ -154,13 +400,23 @@ public class PinningSSLSocketFactory extends SSLSocketFactory {
     return SSLSocketFactory.STRICT_HOSTNAME_VERIFIER;
   }
 
-  private TrustManager[] initializePinningTrustManagers(SystemKeyStore keyStore,
-                                                        String[] pins,
-                                                        long enforceUntilTimestampMillis)
-  {
-    final TrustManager[] trustManagers = new TrustManager[1];
-    trustManagers[0] = new PinningTrustManager(keyStore, pins, enforceUntilTimestampMillis);
+  private static SSLContext createStandaloneSslContext(PinningTrustManager pinningTrustManager) {
+    try {
+      // Nothing verifies these sessions afterwards, so the trust manager
+      // itself is used, which rejects every chain if there's a PinPolicy.
+      final SSLContext sslContext = SSLContext.getInstance(TLS);
+      sslContext.init(null, new TrustManager[] {pinningTrustManager}, null);
+      pinningTrustManager.addUnverifiedSessionContext(sslContext.getClientSessionContext());
+
+      return sslContext;
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    } catch (KeyManagementException kme) {
+      throw new AssertionError(kme);
+    }
+  }
 
-    return trustManagers;
+  private void verifySession(String host, SSLSocket sslSocket) throws IOException {
+    sessionVerifier.verify(host, sslSocket.getSession());
   }
 }
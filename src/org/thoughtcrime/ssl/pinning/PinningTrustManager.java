@@ -17,19 +17,32 @@
 
 package org.thoughtcrime.ssl.pinning;
 
-import android.util.Log;
-
+import java.io.File;
+import java.io.IOException;
 import java.security.KeyStoreException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
@@ -49,7 +62,7 @@ import javax.net.ssl.X509TrustManager;
  * To use:
  * <pre>
  * TrustManager[] trustManagers = new TrustManager[1];
- * trustManagers[0] = new PinningTrustManager(SystemKeyStore.getInstance(),
+ * trustManagers[0] = new PinningTrustManager(SystemKeyStore.getInstance(context),
  *                                            new String[] {"f30012bbc18c231ac1a44b788e410ce754182513"},
  *                                            0);
  *
@@ -66,42 +79,372 @@ import javax.net.ssl.X509TrustManager;
  */
 public class PinningTrustManager implements X509TrustManager {
 
-  private final TrustManager[] systemTrustManagers;
-  private final SystemKeyStore systemKeyStore;
-  private final long           enforceUntilTimestampMillis;
+  public static final int  DEFAULT_CACHE_CAPACITY  = 128;
+  public static final long DEFAULT_CACHE_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+  private final TrustAnchorStore    systemKeyStore;
+  private final long                enforceUntilTimestampMillis;
+  private final ValidatedChainCache cache;
+
+  private final AtomicReference<PinConfiguration> configuration;
+
+  private final ConcurrentHashMap<ChainDigest, Validation> pendingValidations =
+      new ConcurrentHashMap<ChainDigest, Validation>();
+
+  private final AtomicLong coalescedValidations = new AtomicLong();
+
+  private final List<SSLSessionContext> unverifiedSessionContexts =
+      new CopyOnWriteArrayList<SSLSessionContext>();
 
-  private final List<byte[]> pins          = new LinkedList<byte[]>();
-  private final Set<X509Certificate> cache = Collections.synchronizedSet(new HashSet<X509Certificate>());
+  private volatile TrustManager[]       systemTrustManagers;
+  private volatile PersistentChainCache persistentCache;
+  private volatile IntermediateStore    intermediateStore;
+  private volatile ValidationMode       validationMode = ValidationMode.SYSTEM_THEN_PINS;
+  private volatile ValidationMetrics    metrics        = ValidationMetrics.NONE;
 
   /**
    * Constructs a PinningTrustManager with a set of valid pins.
    *
-   * @param keyStore A SystemKeyStore that validation will be based on.
+   * @param keyStore The trust anchors that validation will be based on, usually
+   *                 the SystemKeyStore.
    *
    * @param pins An array of encoded pins to match a seen certificate
    *             chain against. A pin is a hex-encoded hash of a X.509 certificate's
-   *             SubjectPublicKeyInfo. A pin can be generated using the provided pin.py
-   *             script: python ./tools/pin.py certificate_file.pem
+   *             SubjectPublicKeyInfo, or a base64 one prefixed with "sha256/" or "sha1/".
+   *             Both SHA-1 and SHA-256 hashes are accepted. A pin can be generated
+   *             using the provided pin.py script: python ./tools/pin.py certificate_file.pem
    *
    * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
    *                                    enforced.  Normal non-pinned certificate validation
    *                                    will continue.  Set this to some period after your build
    *                                    date, or to 0 to enforce pins forever.
    */
-  public PinningTrustManager(SystemKeyStore keyStore, String[] pins, long enforceUntilTimestampMillis) {
-    this.systemTrustManagers         = initializeSystemTrustManagers(keyStore);
+  public PinningTrustManager(TrustAnchorStore keyStore, String[] pins, long enforceUntilTimestampMillis) {
+    this(keyStore, new PinSet(pins), enforceUntilTimestampMillis);
+  }
+
+  /**
+   * Constructs a PinningTrustManager with a set of valid pins.
+   *
+   * @param keyStore The trust anchors that validation will be based on, usually
+   *                 the SystemKeyStore.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+  public PinningTrustManager(TrustAnchorStore keyStore, PinSet pins, long enforceUntilTimestampMillis) {
+    this(keyStore, pins, enforceUntilTimestampMillis,
+         DEFAULT_CACHE_CAPACITY, DEFAULT_CACHE_TTL_MILLIS);
+  }
+
+  /**
+   * Constructs a PinningTrustManager with a set of valid pins and an explicitly
+   * sized cache of validated certificate chains.
+   *
+   * @param keyStore The trust anchors that validation will be based on, usually
+   *                 the SystemKeyStore.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   *
+   * @param cacheCapacity The maximum number of validated chains to remember.  The least
+   *                      recently used chain is forgotten first.
+   *
+   * @param cacheTtlMillis How long (in milliseconds) a validated chain is remembered.  A chain
+   *                       is never remembered past its leaf certificate's expiration.  Set
+   *                       this to 0 to remember chains until their leaf expires.
+   */
+  public PinningTrustManager(TrustAnchorStore keyStore, PinSet pins, long enforceUntilTimestampMillis,
+                             int cacheCapacity, long cacheTtlMillis)
+  {
+    this(keyStore, pins, null, enforceUntilTimestampMillis, cacheCapacity, cacheTtlMillis);
+  }
+
+  /**
+   * Constructs a PinningTrustManager that pins each host according to a policy.
+   *
+   * <p>
+   * The standard X509TrustManager methods don't know which host they're validating
+   * a chain for, so they can't enforce a policy and reject every chain.  Pins are
+   * enforced by {@link #checkServerTrusted(X509Certificate[], String, String)}, which
+   * PinningSSLSocketFactory and PinningSSLEngineFactory call for every new session.
+   * </p>
+   *
+   * @param keyStore The trust anchors that validation will be based on, usually
+   *                 the SystemKeyStore.
+   *
+   * @param policy The pins each host's certificate chain has to match.
+   *
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+  public PinningTrustManager(TrustAnchorStore keyStore, PinPolicy policy, long enforceUntilTimestampMillis) {
+    this(keyStore, null, policy, enforceUntilTimestampMillis,
+         DEFAULT_CACHE_CAPACITY, DEFAULT_CACHE_TTL_MILLIS);
+  }
+
+  private PinningTrustManager(TrustAnchorStore keyStore, PinSet pins, PinPolicy policy,
+                              long enforceUntilTimestampMillis, int cacheCapacity, long cacheTtlMillis)
+  {
     this.systemKeyStore              = keyStore;
     this.enforceUntilTimestampMillis = enforceUntilTimestampMillis;
+    this.cache                       = new ValidatedChainCache(cacheCapacity, cacheTtlMillis);
+    this.configuration               = new AtomicReference<PinConfiguration>(new PinConfiguration(pins, policy, 0));
+  }
 
-    for (String pin : pins) {
-      this.pins.add(hexStringToByteArray(pin));
+  /**
+   * Replaces the pins this trust manager enforces, for instance with a set
+   * received in a signed configuration update.  Validations already in
+   * progress finish with the pins they started with; everything after
+   * this returns uses the new ones.
+   *
+   * <p>
+   * Each update starts a new pin generation.  Chains validated under an
+   * older generation are validated again the next time they're seen, so
+   * there's no need to rebuild the SSLContext or close pooled connections.
+   * TLS sessions established by a PinningSSLSocketFactory's or
+   * PinningSSLEngineFactory's own sockets and engines are checked against
+   * the new pins the next time they're resumed.  Sessions in the SSLContext
+   * from their getSSLContext(), which nothing re-checks, are invalidated, so
+   * the next connection through it does a full handshake.
+   * </p>
+   * <p>
+   * A resumed session skips the trust manager altogether, so an SSLContext
+   * built directly around this trust manager keeps resuming sessions that
+   * were accepted under the old pins until they expire.
+   * </p>
+   *
+   * @param pins The pins to match every certificate chain against from now on.
+   */
+  public void updatePins(PinSet pins) {
+    if (pins == null) {
+      throw new IllegalArgumentException("No pins!");
     }
+
+    updateConfiguration(pins, null);
   }
 
-  private TrustManager[] initializeSystemTrustManagers(SystemKeyStore keyStore) {
+  /**
+   * Replaces the pins this trust manager enforces with a per-host policy.
+   * See {@link #updatePins(PinSet)}.
+   *
+   * @param policy The pins each host's certificate chain has to match from now on.
+   */
+  public void updatePins(PinPolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException("No pin policy!");
+    }
+
+    updateConfiguration(null, policy);
+  }
+
+  /**
+   * @return The current pin generation, which starts at 0 and counts
+   *         every {@link #updatePins(PinSet)} since.
+   */
+  public long getPinGeneration() {
+    return configuration.get().generation;
+  }
+
+  private void updateConfiguration(PinSet pins, PinPolicy policy) {
+    while (true) {
+      final PinConfiguration current = configuration.get();
+      final PinConfiguration updated = new PinConfiguration(pins, policy, current.generation + 1);
+
+      if (configuration.compareAndSet(current, updated)) {
+        break;
+      }
+    }
+
+    for (SSLSessionContext sessionContext : unverifiedSessionContexts) {
+      invalidateSessions(sessionContext);
+    }
+  }
+
+  private static void invalidateSessions(SSLSessionContext sessionContext) {
+    final Enumeration<byte[]> sessionIds = sessionContext.getIds();
+
+    while (sessionIds.hasMoreElements()) {
+      final SSLSession session = sessionContext.getSession(sessionIds.nextElement());
+
+      if (session != null) {
+        session.invalidate();
+      }
+    }
+  }
+
+  /**
+   * Registers the session cache of an SSLContext whose sessions are used
+   * without a SessionVerifier checking them, so that they can't be resumed
+   * under pins that have since been replaced.
+   */
+  void addUnverifiedSessionContext(SSLSessionContext sessionContext) {
+    unverifiedSessionContexts.add(sessionContext);
+  }
+
+  /**
+   * Keeps a copy of the validated chain cache in a directory, so that chains
+   * validated by an earlier process don't have to be validated again.  See
+   * {@link #enablePersistentCache(File, byte[])}.  The file is authenticated
+   * with a key that's generated the first time and kept in the same directory,
+   * so the directory should be private to the app, such as Context.getFilesDir().
+   */
+  public Future<Integer> enablePersistentCache(File directory) {
+    return enablePersistentCache(directory, null);
+  }
+
+  /**
+   * Keeps a copy of the validated chain cache in a directory, so that chains
+   * validated by an earlier process don't have to be validated again.
+   *
+   * <p>
+   * Only chains that were checked against this trust manager's global pins
+   * and by the platform's TrustManager are kept, so none accepted after the
+   * pins' enforcement deadline or in {@link ValidationMode#SINGLE_PASS}.  The
+   * copy is only used while the pins and the trust anchors are the same as
+   * when it was written.  Chains are remembered until their leaf
+   * certificate expires, or for the cache TTL, whichever is sooner.  The file
+   * is authenticated with an HMAC, so one that's been modified is ignored.
+   * </p>
+   * <p>
+   * The copy is read on a background thread, so that this doesn't delay the
+   * first connection.  Chains seen before it's finished are just validated
+   * as usual.
+   * </p>
+   *
+   * @param directory Where to keep the cache.
+   * @param key The key to authenticate it with, or null to generate one and
+   *            keep it in the directory.
+   * @return A Future that completes with the number of chains restored.
+   */
+  public Future<Integer> enablePersistentCache(final File directory, final byte[] key) {
+    final FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+      public Integer call() throws IOException {
+        final PinConfiguration     pins            = configuration.get();
+        final PersistentChainCache persistentCache =
+            new PersistentChainCache(directory,
+                                     key != null ? key : PersistentChainCache.getOrCreateKey(directory),
+                                     systemKeyStore, cache.getStatistics().getCapacity());
+
+        PinningTrustManager.this.persistentCache = persistentCache;
+
+        final Map<ChainDigest, Long> restored = persistentCache.load(pins.pins);
+
+        for (Map.Entry<ChainDigest, Long> entry : restored.entrySet()) {
+          cache.restore(entry.getKey(), entry.getValue(), pins.generation);
+        }
+
+        return restored.size();
+      }
+    });
+
+    final Thread thread = new Thread(task, "PinningTrustManager");
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+
+    return task;
+  }
+
+  /**
+   * Remembers the intermediates of chains that pass validation, so that a
+   * server which later leaves one out can still be validated.  See
+   * {@link #enableIntermediateStore(int, File)}.  The intermediates are
+   * only kept in memory.
+   *
+   * @param capacity The maximum number of intermediates to remember.
+   */
+  public void enableIntermediateStore(int capacity) {
+    this.intermediateStore = new IntermediateStore(null, capacity);
+  }
+
+  /**
+   * Remembers the intermediates of chains that pass validation, so that a
+   * server which later leaves one out can still be validated.
+   *
+   * <p>
+   * When the presented certificates don't reach a trust anchor, the
+   * intermediates learned so far are searched for one that signed the last
+   * of them, and the completed chain is then validated like any other.
+   * Nothing is fetched from the network.  The least recently used
+   * intermediate is forgotten first.
+   * </p>
+   * <p>
+   * A copy is kept in the directory, and read on a background thread, so
+   * that intermediates learned by an earlier process are available too.
+   * </p>
+   *
+   * @param capacity The maximum number of intermediates to remember.
+   * @param directory Where to keep the copy.
+   * @return A Future that completes with the number of intermediates restored.
+   */
+  public Future<Integer> enableIntermediateStore(int capacity, File directory) {
+    final IntermediateStore   intermediateStore = new IntermediateStore(directory, capacity);
+    final FutureTask<Integer> task              = new FutureTask<Integer>(new Callable<Integer>() {
+      public Integer call() {
+        return intermediateStore.load();
+      }
+    });
+
+    this.intermediateStore = intermediateStore;
+
+    final Thread thread = new Thread(task, "PinningTrustManager");
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+
+    return task;
+  }
+
+  /**
+   * Chooses how chains that aren't already cached get validated.  The default
+   * is {@link ValidationMode#SYSTEM_THEN_PINS}.
+   *
+   * @param validationMode The validation strategy to use from now on.
+   */
+  public void setValidationMode(ValidationMode validationMode) {
+    if (validationMode == null) {
+      throw new IllegalArgumentException("No validation mode!");
+    }
+
+    this.validationMode = validationMode;
+  }
+
+  public ValidationMode getValidationMode() {
+    return validationMode;
+  }
+
+  /**
+   * Reports cache hits, phase latencies, and rejections to the given metrics.
+   * The default, {@link ValidationMetrics#NONE}, discards them.
+   */
+  public void setMetrics(ValidationMetrics metrics) {
+    if (metrics == null) {
+      throw new IllegalArgumentException("No metrics!");
+    }
+
+    this.metrics = metrics;
+  }
+
+  private TrustManager[] getSystemTrustManagers() {
+    TrustManager[] trustManagers = systemTrustManagers;
+
+    // Building these forces every trust anchor to be parsed, so it waits
+    // until a chain actually needs system validation.  Racing threads may
+    // each build a set, which is harmless.
+    if (trustManagers == null) {
+      trustManagers = systemTrustManagers = initializeSystemTrustManagers(systemKeyStore);
+    }
+
+    return trustManagers;
+  }
+
+  private TrustManager[] initializeSystemTrustManagers(TrustAnchorStore keyStore) {
     try {
       final TrustManagerFactory tmf = TrustManagerFactory.getInstance("X509");
-      tmf.init(keyStore.trustStore);
+      tmf.init(keyStore.getTrustStore());
 
       return tmf.getTrustManagers();
     } catch (NoSuchAlgorithmException nsae) {
@@ -111,89 +454,649 @@ public class PinningTrustManager implements X509TrustManager {
     }
   }
 
-  private boolean isValidPin(X509Certificate certificate) throws CertificateException {
-    try {
-      final MessageDigest digest = MessageDigest.getInstance("SHA1");
-      final byte[] spki          = certificate.getPublicKey().getEncoded();
-      final byte[] pin           = digest.digest(spki);
+  private boolean isValidPin(SpkiHasher hasher, X509Certificate certificate, List<PinSet> pinSets,
+                             Map<X509Certificate, Boolean> pinMatches)
+      throws CertificateException
+  {
+    if (pinMatches != null) {
+      final Boolean matched = pinMatches.get(certificate);
 
-      for (byte[] validPin : this.pins) {
-        if (Arrays.equals(validPin, pin)) {
-          return true;
-        }
+      if (matched != null) {
+        return matched;
       }
+    }
 
-      return false;
-    } catch (NoSuchAlgorithmException nsae) {
-      throw new CertificateException(nsae);
+    final boolean matched = hasher.isPinned(certificate, pinSets);
+
+    if (pinMatches != null) {
+      pinMatches.put(certificate, matched);
     }
+
+    return matched;
   }
 
-  private void checkSystemTrust(X509Certificate[] chain, String authType)
+
+  /**
+   * @return The chain the platform trusted: the one presented, or that chain
+   *         completed with learned intermediates.
+   */
+  private X509Certificate[] checkSystemTrust(X509Certificate[] chain, String authType, ValidationMetrics metrics)
       throws CertificateException {
-    for (TrustManager systemTrustManager : systemTrustManagers) {
+    final long start = System.nanoTime();
+
+    try {
+      try {
+        checkSystemTrust(chain, authType);
+        return chain;
+      } catch (CertificateException ce) {
+        final IntermediateStore intermediateStore = this.intermediateStore;
+
+        if (intermediateStore == null) {
+          throw ce;
+        }
+
+        // The server may have left out an intermediate we've seen before.
+        final X509Certificate[] completedChain = completeChain(chain, intermediateStore, ce);
+
+        checkSystemTrust(completedChain, authType);
+        return completedChain;
+      }
+    } catch (CertificateException ce) {
+      metrics.onFailure(ValidationMetrics.Failure.SYSTEM_TRUST);
+      throw ce;
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.SYSTEM_TRUST, System.nanoTime() - start);
+    }
+  }
+
+  private void checkSystemTrust(X509Certificate[] chain, String authType) throws CertificateException {
+    for (TrustManager systemTrustManager : getSystemTrustManagers()) {
       ((X509TrustManager) systemTrustManager).checkServerTrusted(chain, authType);
     }
   }
 
-  private void checkPinTrust(X509Certificate[] chain)
+  private X509Certificate[] completeChain(X509Certificate[] chain, IntermediateStore intermediateStore,
+                                          CertificateException failure)
+      throws CertificateException
+  {
+    try {
+      return CertificateChainCleaner.getCleanChain(chain, systemKeyStore, intermediateStore);
+    } catch (CertificateException ce) {
+      throw failure;
+    }
+  }
+
+  private boolean havePinsExpired() {
+    return enforceUntilTimestampMillis != 0 &&
+           System.currentTimeMillis() > enforceUntilTimestampMillis;
+  }
+
+  private boolean arePinsStale(ValidationMetrics metrics) {
+    if (havePinsExpired()) {
+      Logger.getLogger("PinningTrustManager").warning("Certificate pins are stale, falling back to system trust.");
+      metrics.onStalePins();
+      return true;
+    }
+
+    return false;
+  }
+
+  private X509Certificate[] getCleanChain(X509Certificate[] chain, ValidationMetrics metrics)
+      throws CertificateException
+  {
+    final long start = System.nanoTime();
+
+    try {
+      return CertificateChainCleaner.getCleanChain(chain, systemKeyStore, intermediateStore);
+    } catch (CertificateException ce) {
+      metrics.onFailure(ValidationMetrics.Failure.NO_TRUST_ANCHOR);
+      throw ce;
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.CHAIN_CLEAN, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return The cleaned chain the pins were found in, or null if there were
+   *         no pins to check.
+   */
+  private X509Certificate[] checkPinTrust(X509Certificate[] chain, List<PinSet> pinSets,
+                                          Map<X509Certificate, Boolean> pinMatches, ValidationMetrics metrics)
       throws CertificateException {
 
-    if (enforceUntilTimestampMillis != 0 &&
-        System.currentTimeMillis() > enforceUntilTimestampMillis)
-    {
-      Log.w("PinningTrustManager", "Certificate pins are stale, falling back to system trust.");
-      return;
+    if (pinSets.isEmpty() || arePinsStale(metrics)) {
+      return null;
     }
 
-    final X509Certificate[] cleanChain = CertificateChainCleaner.getCleanChain(chain, systemKeyStore);
+    final X509Certificate[] cleanChain = getCleanChain(chain, metrics);
+
+    checkPins(cleanChain, pinSets, pinMatches, metrics);
+    return cleanChain;
+  }
+
+  private void checkPins(X509Certificate[] cleanChain, List<PinSet> pinSets,
+                         Map<X509Certificate, Boolean> pinMatches, ValidationMetrics metrics)
+      throws CertificateException
+  {
+    final long       start  = System.nanoTime();
+    final SpkiHasher hasher = SpkiHasher.getInstance();
 
-    for (X509Certificate certificate : cleanChain) {
-      if (isValidPin(certificate)) {
-        return;
+    try {
+      for (X509Certificate certificate : cleanChain) {
+        if (isValidPin(hasher, certificate, pinSets, pinMatches)) {
+          return;
+        }
       }
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.PIN_MATCH, System.nanoTime() - start);
     }
 
+    metrics.onFailure(ValidationMetrics.Failure.NO_PIN_MATCH);
     throw new CertificateException("No valid pins found in chain!");
   }
 
+  private X509Certificate[] checkSinglePass(X509Certificate[] chain, String authType, List<PinSet> pinSets,
+                                            Map<X509Certificate, Boolean> pinMatches, ValidationMetrics metrics)
+      throws CertificateException
+  {
+    final X509Certificate[] cleanChain = getCleanChain(chain, metrics);
+    final long              start      = System.nanoTime();
+
+    try {
+      CertificatePathValidator.validate(cleanChain, authType, systemKeyStore,
+                                        CertificateBlacklist.getPlatformBlacklist());
+    } catch (CertificateException ce) {
+      metrics.onFailure(ValidationMetrics.Failure.PATH_VALIDATION);
+      throw ce;
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.PATH_VALIDATION, System.nanoTime() - start);
+    }
+
+    if (!pinSets.isEmpty() && !arePinsStale(metrics)) {
+      checkPins(cleanChain, pinSets, pinMatches, metrics);
+    }
+
+    return cleanChain;
+  }
+
   public void checkClientTrusted(X509Certificate[] chain, String authType)
       throws CertificateException {
     throw new CertificateException("Client certificates not supported!");
   }
 
+  /**
+   * Validates a chain without knowing which host presented it.  When this
+   * trust manager has a PinPolicy, that isn't enough to enforce any pins, so
+   * every chain is rejected; use
+   * {@link #checkServerTrusted(X509Certificate[], String, String)} instead.
+   */
   public void checkServerTrusted(X509Certificate[] chain, String authType)
       throws CertificateException
   {
-    if (cache.contains(chain[0])) {
+    final ValidationMetrics metrics = this.metrics;
+    final PinConfiguration  pins    = configuration.get();
+    final long              start   = System.nanoTime();
+
+    try {
+      if (pins.policy != null) {
+        metrics.onFailure(ValidationMetrics.Failure.NO_PIN_MATCH);
+        throw new CertificateException("Pin policy can't be enforced without a host!");
+      }
+
+      checkChainTrusted(chain, authType, pins, null, metrics);
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.TOTAL, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Validates a chain presented by a particular host, enforcing the pins that
+   * this trust manager's PinPolicy has for that host.
+   *
+   * @param chain The peer's certificate chain.
+   * @param authType The key exchange algorithm used.
+   * @param host The hostname the chain was presented for.
+   */
+  public void checkServerTrusted(X509Certificate[] chain, String authType, String host)
+      throws CertificateException
+  {
+    final ValidationMetrics metrics = this.metrics;
+    final long              start   = System.nanoTime();
+
+    try {
+      checkHostTrusted(chain, authType, host, metrics, true);
+    } finally {
+      metrics.onPhase(ValidationMetrics.Phase.TOTAL, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Checks a session's chain against its host, for a SessionVerifier.  The
+   * handshake's trust manager has already reported a cache outcome and the
+   * total latency for the session, so this reports neither again.
+   */
+  void checkSessionTrusted(X509Certificate[] chain, String authType, String host)
+      throws CertificateException
+  {
+    checkHostTrusted(chain, authType, host, metrics, false);
+  }
+
+  private void checkHostTrusted(X509Certificate[] chain, String authType, String host,
+                                ValidationMetrics metrics, boolean reportCacheOutcome)
+      throws CertificateException
+  {
+    final PinConfiguration pins        = configuration.get();
+    final List<PinSet>     hostPins    = pins.policy != null ? pins.policy.findPins(host)
+                                                             : Collections.<PinSet>emptyList();
+    final ChainDigest      chainDigest = ChainDigest.of(chain);
+    final ChainDigest      hostDigest  = hostPins.isEmpty() ? null : ChainDigest.of(chain, host);
+    final boolean          chainCached = cache.contains(chainDigest, pins.generation);
+    final boolean          hostCached  = hostDigest == null || cache.contains(hostDigest, pins.generation);
+
+    // One cache outcome per call, so that a host with its own pins doesn't
+    // count twice: it's only a hit if nothing at all had to be validated.
+    if (reportCacheOutcome) {
+      recordCacheOutcome(metrics, chainCached && hostCached);
+    }
+
+    if (!chainCached) {
+      validateChain(chain, chainDigest, authType, pins, null, metrics);
+    }
+
+    if (!hostCached) {
+      validateHost(chain, hostDigest, hostPins, pins, metrics);
+    }
+  }
+
+  /**
+   * Validates many chains at once, for instance to check a set of captured
+   * chains before a release, or to warm the cache for known hosts at startup.
+   * Each distinct chain is validated once on the given executor, and every
+   * chain that passes is cached just as if it had been seen in a handshake.
+   *
+   * <p>
+   * Work that chains have in common is only done once: a chain that appears
+   * more than once in the batch is validated once, a certificate shared by
+   * several chains has its SubjectPublicKeyInfo hashed against the pins once,
+   * and signature checks are shared through the process-wide link cache.
+   * Every chain is checked against the same pins, even if they're updated
+   * while the batch runs.  Like {@link #checkServerTrusted(X509Certificate[], String)},
+   * this rejects every chain when the pins are a PinPolicy.
+   * </p>
+   *
+   * @param chains The certificate chains to validate, leaf first.
+   * @param authType The key exchange algorithm to validate them for.
+   * @param executor Where to run the validations.
+   * @return A result for each chain, in the order they were passed in.
+   */
+  public List<ChainValidationResult> checkServerTrusted(List<X509Certificate[]> chains, final String authType,
+                                                        Executor executor)
+      throws InterruptedException
+  {
+    final ValidationMetrics             metrics     = this.metrics;
+    final PinConfiguration              pins        = configuration.get();
+    final Map<X509Certificate, Boolean> pinMatches  = new ConcurrentHashMap<X509Certificate, Boolean>();
+    final Map<ChainDigest, Validation>  validations = new HashMap<ChainDigest, Validation>();
+    final X509Certificate[][]           batch       = chains.toArray(new X509Certificate[chains.size()][]);
+    final Validation[]                  tasks       = new Validation[batch.length];
+    final CertificateException[]        failures    = new CertificateException[batch.length];
+
+    for (int i = 0; i < batch.length; i++) {
+      final X509Certificate[] chain = batch[i];
+      final ChainDigest       digest;
+
+      if (pins.policy != null) {
+        failures[i] = new CertificateException("Pin policy can't be enforced without a host!");
+        continue;
+      }
+
+      try {
+        digest = ChainDigest.of(chain);
+      } catch (CertificateException ce) {
+        failures[i] = ce;
+        continue;
+      }
+
+      tasks[i] = validations.get(digest);
+
+      if (tasks[i] == null) {
+        tasks[i] = new Validation(new Callable<Void>() {
+          public Void call() throws CertificateException {
+            final long start = System.nanoTime();
+
+            try {
+              checkChainTrusted(chain, authType, pins, pinMatches, metrics);
+            } finally {
+              metrics.onPhase(ValidationMetrics.Phase.TOTAL, System.nanoTime() - start);
+            }
+
+            return null;
+          }
+        }, pins.generation);
+
+        validations.put(digest, tasks[i]);
+        executor.execute(tasks[i]);
+      }
+    }
+
+    final List<ChainValidationResult> results = new ArrayList<ChainValidationResult>(batch.length);
+
+    for (int i = 0; i < batch.length; i++) {
+      if (tasks[i] != null) {
+        try {
+          tasks[i].get();
+        } catch (ExecutionException ee) {
+          failures[i] = unwrapFailure(ee);
+        }
+      }
+
+      results.add(new ChainValidationResult(batch[i], failures[i]));
+    }
+
+    return results;
+  }
+
+  /**
+   * Validates many chains at once on a temporary pool with a thread for each
+   * processor.  See {@link #checkServerTrusted(List, String, Executor)}.
+   */
+  public List<ChainValidationResult> checkServerTrusted(List<X509Certificate[]> chains, String authType)
+      throws InterruptedException
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    try {
+      return checkServerTrusted(chains, authType, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void checkChainTrusted(X509Certificate[] chain, String authType, PinConfiguration pins,
+                                 Map<X509Certificate, Boolean> pinMatches, ValidationMetrics metrics)
+      throws CertificateException
+  {
+    final ChainDigest chainDigest = ChainDigest.of(chain);
+    final boolean     cached      = cache.contains(chainDigest, pins.generation);
+
+    recordCacheOutcome(metrics, cached);
+
+    if (!cached) {
+      validateChain(chain, chainDigest, authType, pins, pinMatches, metrics);
+    }
+  }
+
+  private static void recordCacheOutcome(ValidationMetrics metrics, boolean cached) {
+    if (cached) {
+      metrics.onCacheHit();
+    } else {
+      metrics.onCacheMiss();
+    }
+  }
+
+  private void validateChain(final X509Certificate[] chain, final ChainDigest chainDigest,
+                             final String authType, final PinConfiguration pins,
+                             final Map<X509Certificate, Boolean> pinMatches, final ValidationMetrics metrics)
+      throws CertificateException
+  {
+    validateOnce(chainDigest, pins.generation, new Callable<Void>() {
+      public Void call() throws CertificateException {
+        final ValidationMode validationMode = PinningTrustManager.this.validationMode;
+
+        if (validationMode == ValidationMode.SINGLE_PASS) {
+          final X509Certificate[] cleanChain = checkSinglePass(chain, authType, pins.getGlobalPins(), pinMatches, metrics);
+
+          learnIntermediates(cleanChain, cleanChain);
+        } else {
+          // Note: We do this so that we'll never be doing worse than the default
+          // system validation.  It's duplicate work, however, which SINGLE_PASS
+          // avoids by validating the cleaned chain itself.
+          final X509Certificate[] trustedChain = checkSystemTrust(chain, authType, metrics);
+          final X509Certificate[] cleanChain   = checkPinTrust(trustedChain, pins.getGlobalPins(), pinMatches, metrics);
+
+          learnIntermediates(trustedChain, cleanChain);
+        }
+
+        final long                 expiresAt       = cache.add(chainDigest, chain[0], pins.generation);
+        final PersistentChainCache persistentCache = PinningTrustManager.this.persistentCache;
+
+        // A chain accepted after the pins expired was never checked against
+        // them, so it mustn't outlive this process.  A later build with the
+        // same pins and a new deadline would otherwise accept it unchecked.
+        // Nor may one the platform never saw, since a later process could be
+        // relying on the platform's checks.
+        if (persistentCache != null && expiresAt != 0 && !havePinsExpired() &&
+            validationMode == ValidationMode.SYSTEM_THEN_PINS)
+        {
+          persistentCache.add(chainDigest, expiresAt, pins.pins);
+        }
+
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @param cleanChain The trusted chain, already cleaned, or null if it
+   *                   hasn't been.
+   */
+  private void learnIntermediates(X509Certificate[] trustedChain, X509Certificate[] cleanChain) {
+    final IntermediateStore intermediateStore = this.intermediateStore;
+
+    if (intermediateStore == null) {
       return;
     }
 
-    // Note: We do this so that we'll never be doing worse than the default
-    // system validation.  It's duplicate work, however, and can be factored
-    // out if we make the verification below more complete.
-    checkSystemTrust(chain, authType);
-    checkPinTrust(chain);
-    cache.add(chain[0]);
+    try {
+      intermediateStore.learn(cleanChain != null ? cleanChain :
+                                  CertificateChainCleaner.getCleanChain(trustedChain, systemKeyStore),
+                              systemKeyStore);
+    } catch (CertificateException ce) {
+      // Trusted by the platform, but not through our anchors.
+    }
   }
 
-  public X509Certificate[] getAcceptedIssuers() {
-    return null;
+  private void validateHost(final X509Certificate[] chain, final ChainDigest hostDigest,
+                            final List<PinSet> hostPins, final PinConfiguration pins,
+                            final ValidationMetrics metrics)
+      throws CertificateException
+  {
+    validateOnce(hostDigest, pins.generation, new Callable<Void>() {
+      public Void call() throws CertificateException {
+        checkPinTrust(chain, hostPins, null, metrics);
+        cache.add(hostDigest, chain[0], pins.generation);
+        return null;
+      }
+    });
   }
 
-  private byte[] hexStringToByteArray(String s) {
-    final int len = s.length();
-    final byte[] data = new byte[len / 2];
+  /**
+   * Runs a validation, unless the same chain is already being validated by
+   * another thread, in which case this waits for that validation and shares
+   * its result instead.  After a network change, an app can open dozens of
+   * connections to one host at once, and they'd otherwise all miss the cache
+   * together and repeat the same work.  A validation under older pins can't
+   * be shared, so that one just runs alongside.
+   */
+  private void validateOnce(ChainDigest digest, long generation, Callable<Void> validation)
+      throws CertificateException
+  {
+    final Validation task     = new Validation(validation, generation);
+    final Validation inFlight = pendingValidations.putIfAbsent(digest, task);
 
-    for (int i = 0; i < len; i += 2) {
-      data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4) +
-          Character.digit(s.charAt(i + 1), 16));
+    if (inFlight == null) {
+      try {
+        task.run();
+      } finally {
+        pendingValidations.remove(digest, task);
+      }
+
+      awaitValidation(task, false);
+    } else if (inFlight.generation == generation) {
+      coalescedValidations.incrementAndGet();
+      awaitValidation(inFlight, true);
+    } else {
+      task.run();
+      awaitValidation(task, false);
     }
+  }
 
-    return data;
+  private static void awaitValidation(FutureTask<Void> task, boolean shared)
+      throws CertificateException
+  {
+    boolean interrupted = false;
+
+    try {
+      while (true) {
+        try {
+          task.get();
+          return;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          final CertificateException cause = unwrapFailure(ee);
+
+          // Every waiter gets its own exception, so none of them can
+          // see another thread's changes to it.
+          throw shared ? new CertificateException(cause.getMessage(), cause) : cause;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static CertificateException unwrapFailure(ExecutionException ee) {
+    final Throwable cause = ee.getCause();
+
+    if (cause instanceof CertificateException) {
+      return (CertificateException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    } else if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else {
+      throw new AssertionError(cause);
+    }
+  }
+
+  boolean hasPinPolicy() {
+    return configuration.get().policy != null;
+  }
+
+  /**
+   * @return A trust manager for an SSLContext whose sessions are all passed
+   *         through a SessionVerifier before they're used.  It enforces the
+   *         global pins like this one does, but leaves a PinPolicy's host pins
+   *         to the SessionVerifier, which knows the host.
+   */
+  X509TrustManager getHandshakeTrustManager() {
+    return new HandshakeTrustManager();
+  }
+
+  public X509Certificate[] getAcceptedIssuers() {
+    return null;
   }
 
   public void clearCache() {
+    final PersistentChainCache persistentCache = this.persistentCache;
+
     cache.clear();
+
+    if (persistentCache != null) {
+      persistentCache.clear();
+    }
+  }
+
+  /**
+   * @return A snapshot of the validated chain cache's hit, miss, and eviction counts.
+   */
+  public CacheStatistics getCacheStatistics() {
+    return cache.getStatistics();
+  }
+
+  /**
+   * @return How many gaps in presented chains learned intermediates filled
+   *         (hits), how many they couldn't (misses), how many intermediates
+   *         were forgotten to make room (evictions), and how many are known,
+   *         or null if {@link #enableIntermediateStore(int)} hasn't been called.
+   */
+  public CacheStatistics getIntermediateStoreStatistics() {
+    final IntermediateStore intermediateStore = this.intermediateStore;
+
+    if (intermediateStore == null) {
+      return null;
+    }
+
+    return intermediateStore.getStatistics();
+  }
+
+  /**
+   * @return How many validations waited for another thread's validation of
+   *         the same chain, rather than repeating it.
+   */
+  public long getCoalescedValidationCount() {
+    return coalescedValidations.get();
+  }
+
+  /**
+   * The pins in force, published as a whole so that a validation never sees
+   * half of an update.
+   */
+  private static final class PinConfiguration {
+    final PinSet    pins;
+    final PinPolicy policy;
+    final long      generation;
+
+    PinConfiguration(PinSet pins, PinPolicy policy, long generation) {
+      this.pins       = pins;
+      this.policy     = policy;
+      this.generation = generation;
+    }
+
+    List<PinSet> getGlobalPins() {
+      if (pins == null) {
+        return Collections.emptyList();
+      }
+
+      return Collections.singletonList(pins);
+    }
+  }
+
+  private final class HandshakeTrustManager implements X509TrustManager {
+
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+        throws CertificateException
+    {
+      PinningTrustManager.this.checkClientTrusted(chain, authType);
+    }
+
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+        throws CertificateException
+    {
+      final ValidationMetrics metrics = PinningTrustManager.this.metrics;
+      final long              start   = System.nanoTime();
+
+      try {
+        checkChainTrusted(chain, authType, configuration.get(), null, metrics);
+      } finally {
+        metrics.onPhase(ValidationMetrics.Phase.TOTAL, System.nanoTime() - start);
+      }
+    }
+
+    public X509Certificate[] getAcceptedIssuers() {
+      return PinningTrustManager.this.getAcceptedIssuers();
+    }
+  }
+
+  private static final class Validation extends FutureTask<Void> {
+    final long generation;
+
+    Validation(Callable<Void> validation, long generation) {
+      super(validation);
+      this.generation = generation;
+    }
   }
 }
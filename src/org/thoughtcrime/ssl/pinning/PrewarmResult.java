@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.IOException;
+
+/**
+ * How warming up one host went: how long it took to connect, complete a
+ * TLS handshake, and verify the host's certificate chain, or why it failed.
+ */
+public final class PrewarmResult {
+
+  private final String      host;
+  private final long        elapsedMillis;
+  private final IOException failure;
+
+  PrewarmResult(String host, long elapsedMillis, IOException failure) {
+    this.host          = host;
+    this.elapsedMillis = elapsedMillis;
+    this.failure       = failure;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * @return How long (in milliseconds) the host took to warm up, or to fail.
+   */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public boolean isWarm() {
+    return failure == null;
+  }
+
+  /**
+   * @return Why the host couldn't be warmed up, or null if it was.
+   */
+  public IOException getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    return host + ": " + (isWarm() ? elapsedMillis + "ms" : "failed after " + elapsedMillis + "ms, " + failure);
+  }
+}
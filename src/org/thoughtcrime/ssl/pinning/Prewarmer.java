@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Connects to a list of hosts in the background, a bounded number at a
+ * time, and times each one.
+ */
+abstract class Prewarmer {
+
+  private static final ThreadFactory THREADS = new ThreadFactory() {
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "Prewarmer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  /**
+   * Connects to a host, leaving behind whatever makes the next connection
+   * to it faster.
+   */
+  protected abstract void warm(String host) throws IOException;
+
+  /**
+   * @return A Future that completes with a result for each host, in the
+   *         order they were given.
+   */
+  public Future<List<PrewarmResult>> start(final List<String> hosts, int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+    }
+
+    final int                         threads  = Math.max(1, Math.min(concurrency, hosts.size()));
+    final ExecutorService             executor = Executors.newFixedThreadPool(threads, THREADS);
+    final List<Future<PrewarmResult>> pending  = new ArrayList<Future<PrewarmResult>>(hosts.size());
+
+    for (final String host : hosts) {
+      pending.add(executor.submit(new Callable<PrewarmResult>() {
+        public PrewarmResult call() {
+          final long start = System.nanoTime();
+
+          try {
+            warm(host);
+            return new PrewarmResult(host, (System.nanoTime() - start) / 1000000, null);
+          } catch (IOException ioe) {
+            return new PrewarmResult(host, (System.nanoTime() - start) / 1000000, ioe);
+          }
+        }
+      }));
+    }
+
+    executor.shutdown();
+
+    final Callable<List<PrewarmResult>> collector = new Callable<List<PrewarmResult>>() {
+      public List<PrewarmResult> call() throws InterruptedException, ExecutionException {
+        final List<PrewarmResult> results = new ArrayList<PrewarmResult>(pending.size());
+
+        for (Future<PrewarmResult> result : pending) {
+          results.add(result.get());
+        }
+
+        return results;
+      }
+    };
+
+    // Collected on a thread of its own, so the returned Future is done
+    // once every host is, whether or not anybody's waiting on it.
+    final FutureTask<List<PrewarmResult>> results = new FutureTask<List<PrewarmResult>>(collector);
+
+    THREADS.newThread(results).start();
+    return results;
+  }
+}
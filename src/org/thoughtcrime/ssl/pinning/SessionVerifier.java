@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+
+import java.io.IOException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * The checks that need to know which host a TLS session was negotiated with,
+ * and so can't happen inside an X509TrustManager: strict hostname verification
+ * and per-host pins.  They run once a handshake completes, before any
+ * application data is exchanged, and once per session and pin generation.
+ */
+class SessionVerifier {
+
+  private static final String VERIFIED_HOST           = "org.thoughtcrime.ssl.pinning.verified-host";
+  private static final int    HOSTNAME_CACHE_CAPACITY = 64;
+
+  private final PinningTrustManager       trustManager;
+  private final HostnameVerificationCache hostnameVerifier;
+  private final AtomicLong                resumedSessions = new AtomicLong();
+  private final AtomicLong                fullHandshakes  = new AtomicLong();
+
+  public SessionVerifier(PinningTrustManager trustManager) {
+    this.trustManager     = trustManager;
+    this.hostnameVerifier = new HostnameVerificationCache(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER,
+                                                          HOSTNAME_CACHE_CAPACITY);
+  }
+
+  public void verify(String host, SSLSession session) throws IOException {
+    final long   generation = trustManager.getPinGeneration();
+    final Object verified   = session.getValue(VERIFIED_HOST);
+
+    // Sessions in this context only exist once our trust manager has accepted
+    // the chain, and a resumed session carries the same chain.  If it's also
+    // already been matched against this host under the current pins, there's
+    // nothing left to check.
+    if (verified instanceof VerifiedHost && ((VerifiedHost)verified).matches(host, generation)) {
+      resumedSessions.incrementAndGet();
+      return;
+    }
+
+    fullHandshakes.incrementAndGet();
+    hostnameVerifier.verify(host, (X509Certificate)session.getPeerCertificates()[0]);
+
+    // Host pins need the host, so they're always checked here.  A resumed
+    // session was accepted under whatever pins were in force when it was
+    // established, so it's checked against the current ones too, which is a
+    // cache hit if they haven't changed.
+    if (trustManager.hasPinPolicy() || verified != null) {
+      checkPins(host, session);
+    }
+
+    session.putValue(VERIFIED_HOST, new VerifiedHost(host, generation));
+  }
+
+  public CacheStatistics getSessionStatistics(SSLSessionContext sessionContext) {
+    final Enumeration<byte[]> sessionIds = sessionContext.getIds();
+
+    int size = 0;
+
+    while (sessionIds.hasMoreElements()) {
+      sessionIds.nextElement();
+      size++;
+    }
+
+    return new CacheStatistics(resumedSessions.get(), fullHandshakes.get(), 0, 0,
+                               size, sessionContext.getSessionCacheSize());
+  }
+
+  public CacheStatistics getHostnameVerificationStatistics() {
+    return hostnameVerifier.getStatistics();
+  }
+
+  private void checkPins(String host, SSLSession session) throws IOException {
+    final Certificate[]     peerCertificates = session.getPeerCertificates();
+    final X509Certificate[] chain            = new X509Certificate[peerCertificates.length];
+
+    for (int i = 0; i < chain.length; i++) {
+      chain[i] = (X509Certificate)peerCertificates[i];
+    }
+
+    try {
+      trustManager.checkSessionTrusted(chain, getAuthType(session), host);
+    } catch (CertificateException ce) {
+      final SSLPeerUnverifiedException exception = new SSLPeerUnverifiedException(ce.getMessage());
+      exception.initCause(ce);
+      throw exception;
+    }
+  }
+
+  private static String getAuthType(SSLSession session) {
+    // "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256" -> "ECDHE_RSA", as the platform reports it
+    // during the handshake.  TLS 1.3 suites don't name a key exchange at all.
+    final String cipherSuite = session.getCipherSuite();
+    final int    with        = cipherSuite.indexOf("_WITH_");
+
+    if (with == -1 || cipherSuite.indexOf('_') >= with) {
+      return "UNKNOWN";
+    }
+
+    return cipherSuite.substring(cipherSuite.indexOf('_') + 1, with);
+  }
+
+  private static final class VerifiedHost {
+    private final String host;
+    private final long   generation;
+
+    VerifiedHost(String host, long generation) {
+      this.host       = host;
+      this.generation = generation;
+    }
+
+    boolean matches(String host, long generation) {
+      return this.generation >= generation && this.host.equals(host);
+    }
+  }
+}
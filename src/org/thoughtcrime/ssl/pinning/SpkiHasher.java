@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hashes a certificate's SubjectPublicKeyInfo without building a PublicKey.
+ *
+ * <p>
+ * Rather than calling getPublicKey().getEncoded(), which decodes the key
+ * and then re-encodes it into a fresh array, the SubjectPublicKeyInfo is
+ * located inside the certificate's own DER encoding and digested in place.
+ * Each thread keeps its own MessageDigest and output buffer, so once a thread
+ * is warm the only allocation left is the copy getEncoded() itself returns.
+ * </p>
+ */
+final class SpkiHasher {
+
+  private static final int TAG_EXPLICIT_VERSION = 0xa0;
+
+  private static final ThreadLocal<SpkiHasher> INSTANCES = new ThreadLocal<SpkiHasher>() {
+    @Override
+    protected SpkiHasher initialValue() {
+      return new SpkiHasher();
+    }
+  };
+
+  /**
+   * @return The calling thread's SpkiHasher.
+   */
+  public static SpkiHasher getInstance() {
+    return INSTANCES.get();
+  }
+
+  private final MessageDigest sha1;
+  private final MessageDigest sha256;
+  private final byte[]        sha1Digest   = new byte[PinSet.SHA1_LENGTH];
+  private final byte[]        sha256Digest = new byte[PinSet.SHA256_LENGTH];
+
+  private SpkiHasher() {
+    try {
+      this.sha1   = MessageDigest.getInstance("SHA1");
+      this.sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    }
+  }
+
+  /**
+   * Checks a certificate's SubjectPublicKeyInfo against a set of pins.  The key
+   * is only hashed with the algorithms the pin set actually uses, and SHA-256
+   * is only computed if SHA-1 pins didn't already match.
+   */
+  public boolean isPinned(X509Certificate certificate, PinSet pins) throws CertificateException {
+    return isPinned(certificate, Collections.singletonList(pins));
+  }
+
+  /**
+   * Checks a certificate's SubjectPublicKeyInfo against several sets of pins,
+   * such as a host's pins and the pins of every pattern that covers it.  The
+   * certificate is only walked once, each digest is computed at most once and
+   * only if some set uses that algorithm, and every set is probed with it.
+   */
+  public boolean isPinned(X509Certificate certificate, List<PinSet> pinSets) throws CertificateException {
+    boolean sha1Pins   = false;
+    boolean sha256Pins = false;
+
+    for (PinSet pins : pinSets) {
+      sha1Pins   |= pins.hasSha1Pins();
+      sha256Pins |= pins.hasSha256Pins();
+    }
+
+    if (!sha1Pins && !sha256Pins) {
+      return false;
+    }
+
+    final byte[] encoded = certificate.getEncoded();
+    final long   range   = locateSubjectPublicKeyInfo(encoded);
+
+    byte[] spki   = encoded;
+    int    offset = (int) (range >>> 32);
+    int    length = (int) range;
+
+    if (range == -1) {
+      spki   = certificate.getPublicKey().getEncoded();
+      offset = 0;
+      length = spki.length;
+    }
+
+    if (sha1Pins) {
+      digest(sha1, sha1Digest, spki, offset, length);
+
+      for (PinSet pins : pinSets) {
+        if (pins.hasSha1Pins() && pins.containsSha1(sha1Digest, 0)) {
+          return true;
+        }
+      }
+    }
+
+    if (sha256Pins) {
+      digest(sha256, sha256Digest, spki, offset, length);
+
+      for (PinSet pins : pinSets) {
+        if (pins.hasSha256Pins() && pins.containsSha256(sha256Digest, 0)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Computes the SHA-1 digest of a certificate's SubjectPublicKeyInfo.
+   *
+   * @return The digest.  The array belongs to this SpkiHasher and is overwritten
+   *         by the next call on the same thread.
+   */
+  public byte[] sha1(X509Certificate certificate) throws CertificateException {
+    return digest(sha1, sha1Digest, certificate);
+  }
+
+  /**
+   * Computes the SHA-256 digest of a certificate's SubjectPublicKeyInfo.
+   *
+   * @return The digest.  The array belongs to this SpkiHasher and is overwritten
+   *         by the next call on the same thread.
+   */
+  public byte[] sha256(X509Certificate certificate) throws CertificateException {
+    return digest(sha256, sha256Digest, certificate);
+  }
+
+  private byte[] digest(MessageDigest digest, byte[] output, X509Certificate certificate)
+      throws CertificateException
+  {
+    final byte[] encoded = certificate.getEncoded();
+    final long   range   = locateSubjectPublicKeyInfo(encoded);
+
+    if (range == -1) {
+      final byte[] spki = certificate.getPublicKey().getEncoded();
+      return digest(digest, output, spki, 0, spki.length);
+    }
+
+    return digest(digest, output, encoded, (int) (range >>> 32), (int) range);
+  }
+
+  private byte[] digest(MessageDigest digest, byte[] output, byte[] input, int offset, int length) {
+    digest.update(input, offset, length);
+
+    try {
+      digest.digest(output, 0, output.length);
+    } catch (DigestException de) {
+      throw new AssertionError(de);
+    }
+
+    return output;
+  }
+
+  /**
+   * Walks just enough of an X.509 certificate's DER encoding to find the
+   * SubjectPublicKeyInfo.
+   *
+   * @return The SubjectPublicKeyInfo's offset in the upper 32 bits and its
+   *         length (header included) in the lower 32 bits, or -1 if the
+   *         encoding isn't a certificate we understand.
+   */
+  static long locateSubjectPublicKeyInfo(byte[] der) {
+    // Certificate ::= SEQUENCE { tbsCertificate, ... }
+    int offset = Der.enter(der, 0, Der.TAG_SEQUENCE);
+    if (offset == -1) {
+      return -1;
+    }
+
+    // TBSCertificate ::= SEQUENCE { [0] version OPTIONAL, serialNumber,
+    //                               signature, issuer, validity, subject,
+    //                               subjectPublicKeyInfo, ... }
+    offset = Der.enter(der, offset, Der.TAG_SEQUENCE);
+    if (offset == -1) {
+      return -1;
+    }
+
+    if (offset < der.length && (der[offset] & 0xff) == TAG_EXPLICIT_VERSION) {
+      offset = Der.skip(der, offset);
+      if (offset == -1) {
+        return -1;
+      }
+    }
+
+    for (int field = 0; field < 5; field++) {
+      offset = Der.skip(der, offset);
+      if (offset == -1) {
+        return -1;
+      }
+    }
+
+    if (offset >= der.length || (der[offset] & 0xff) != Der.TAG_SEQUENCE) {
+      return -1;
+    }
+
+    final int end = Der.skip(der, offset);
+    if (end == -1) {
+      return -1;
+    }
+
+    return ((long) offset << 32) | (end - offset);
+  }
+}
@@ -17,122 +17,150 @@
 package org.thoughtcrime.ssl.pinning;
 
 import android.content.Context;
-import android.content.res.Resources.NotFoundException;
-import android.util.Log;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.Principal;
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An interface to the system's trust anchors.  We're using our
  * own truststore, which is just the AOSP default, but in a place
- * we know to find it for sure.
+ * we know to find it for sure.  See {@link BundledTrustAnchorSource}.
+ *
+ * <p>
+ * The truststore is loaded once per process, and shared by every
+ * PinningTrustManager that asks for it.  Loading it only maps an index of
+ * the anchors.  An anchor is parsed when a chain reaches it, except that
+ * the first validation in the default
+ * {@link ValidationMode#SYSTEM_THEN_PINS} still parses every anchor, since
+ * the platform's TrustManager reads them all into its own index.  Only
+ * {@link ValidationMode#SINGLE_PASS} avoids that.
+ * </p>
  *
  * @author Moxie Marlinspike
  */
-public class SystemKeyStore {
-  private static final int CACERTS_FILE_SIZE = 1024 * 140;
+public class SystemKeyStore extends TrustAnchorStore {
 
-  private static SystemKeyStore instance;
+  private static final AtomicReference<FutureTask<SystemKeyStore>> loader =
+      new AtomicReference<FutureTask<SystemKeyStore>>();
 
-  public static synchronized SystemKeyStore getInstance(Context context) {
-    if (instance == null) {
-      instance = new SystemKeyStore(context);
-    }
-    return instance;
-  }
+  private static volatile SystemKeyStore instance;
 
-  private final HashMap<Principal, X509Certificate> trustRoots;
-  final KeyStore trustStore;
+  /**
+   * Returns the SystemKeyStore, loading it on the calling thread if nothing
+   * has loaded it yet.  If a {@link #preload(Context)} is still in progress,
+   * this waits for it rather than loading the store a second time.
+   */
+  public static SystemKeyStore getInstance(Context context) {
+    final SystemKeyStore keyStore = instance;
 
-  private SystemKeyStore(Context context) {
-    final KeyStore trustStore = getTrustStore(context);
-    this.trustRoots           = initializeTrustedRoots(trustStore);
-    this.trustStore           = trustStore;
-  }
+    if (keyStore != null) {
+      return keyStore;
+    }
 
-  public boolean isTrustRoot(X509Certificate certificate) {
-    final X509Certificate trustRoot = trustRoots.get(certificate.getSubjectX500Principal());
-    return trustRoot != null && trustRoot.getPublicKey().equals(certificate.getPublicKey());
-  }
+    final FutureTask<SystemKeyStore> task = getLoader(context);
+    task.run();
 
-  public X509Certificate getTrustRootFor(X509Certificate certificate) {
-    final X509Certificate trustRoot = trustRoots.get(certificate.getIssuerX500Principal());
+    return awaitLoader(task);
+  }
 
-    if (trustRoot == null) {
-      return null;
+  /**
+   * Starts loading the SystemKeyStore on a background thread, so that the
+   * first pinned connection doesn't pay for parsing the trust store.  Call
+   * this early, for instance from Application.onCreate().
+   *
+   * @return A Future that completes with the loaded SystemKeyStore.
+   */
+  public static Future<SystemKeyStore> preload(Context context) {
+    final FutureTask<SystemKeyStore> task = getLoader(context);
+
+    if (!task.isDone()) {
+      final Thread thread = new Thread(task, "SystemKeyStore");
+      thread.setPriority(Thread.MIN_PRIORITY);
+      thread.start();
     }
 
-    if (trustRoot.getSubjectX500Principal().equals(certificate.getSubjectX500Principal())) {
-      return null;
-    }
+    return task;
+  }
 
-    try {
-      certificate.verify(trustRoot.getPublicKey());
-    } catch (GeneralSecurityException e) {
-      return null;
+  /**
+   * Starts loading the SystemKeyStore on the supplied executor.
+   *
+   * @return A Future that completes with the loaded SystemKeyStore.
+   */
+  public static Future<SystemKeyStore> preload(Context context, Executor executor) {
+    final FutureTask<SystemKeyStore> task = getLoader(context);
+
+    if (!task.isDone()) {
+      executor.execute(task);
     }
 
-    return trustRoot;
+    return task;
   }
 
-  private HashMap<Principal, X509Certificate> initializeTrustedRoots(KeyStore trustStore) {
-    try {
-      final HashMap<Principal, X509Certificate> trusted =
-          new HashMap<Principal, X509Certificate>();
+  private static FutureTask<SystemKeyStore> getLoader(Context context) {
+    final FutureTask<SystemKeyStore> existing = loader.get();
 
-      for (Enumeration<String> aliases = trustStore.aliases(); aliases.hasMoreElements(); ) {
-        final String alias = aliases.nextElement();
-        final X509Certificate cert = (X509Certificate) trustStore.getCertificate(alias);
+    if (existing != null) {
+      return existing;
+    }
 
-        if (cert != null) {
-          trusted.put(cert.getSubjectX500Principal(), cert);
-        }
+    final Context applicationContext = context.getApplicationContext() != null ?
+                                       context.getApplicationContext() : context;
+
+    final FutureTask<SystemKeyStore> task = new FutureTask<SystemKeyStore>(new Callable<SystemKeyStore>() {
+      public SystemKeyStore call() throws IOException, CertificateException {
+        instance = new SystemKeyStore(applicationContext);
+        return instance;
       }
+    });
 
-      return trusted;
-    } catch (KeyStoreException e) {
-      throw new AssertionError(e);
+    if (loader.compareAndSet(null, task)) {
+      return task;
     }
+
+    return loader.get();
   }
 
-  private KeyStore getTrustStore(Context context) {
+  private static SystemKeyStore awaitLoader(FutureTask<SystemKeyStore> task) {
+    boolean interrupted = false;
+
     try {
-      final KeyStore trustStore = KeyStore.getInstance("BKS");
-      final BufferedInputStream bin =
-          new BufferedInputStream(context.getResources().openRawResource(R.raw.cacerts),
-                                  CACERTS_FILE_SIZE);
-
-      try {
-        trustStore.load(bin, "changeit".toCharArray());
-      } finally {
+      while (true) {
         try {
-          bin.close();
-        } catch (IOException ioe) {
-          Log.w("SystemKeyStore", ioe);
+          return task.get();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          // Let the next caller try again, just as it would have before.
+          loader.compareAndSet(task, null);
+
+          if (ee.getCause() instanceof Error) {
+            throw (Error) ee.getCause();
+          } else if (ee.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) ee.getCause();
+          } else {
+            throw new AssertionError(ee.getCause());
+          }
         }
       }
-
-      return trustStore;
-    } catch (KeyStoreException kse) {
-      throw new AssertionError(kse);
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    } catch (CertificateException e) {
-      throw new AssertionError(e);
-    } catch (NotFoundException e) {
-      throw new AssertionError(e);
-    } catch (IOException e) {
-      throw new AssertionError(e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
+
+  private SystemKeyStore(Context context) throws IOException, CertificateException {
+    super(new BundledTrustAnchorSource(context));
+  }
+
+  SystemKeyStore(TrustAnchorIndex trustAnchors) {
+    super(trustAnchors);
+  }
 }
@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * A precompiled index of trust anchors.
+ *
+ * <p>
+ * Rather than parsing every certificate in the trust store at startup, the
+ * store is compiled ahead of time (see tools/anchor-index) into a flat table
+ * that can be memory-mapped and searched in place:
+ * </p>
+ * <pre>
+ * int    magic ("PINX")
+ * int    version
+ * int    count
+ * count * { long   subjectHash   -- first 8 bytes of SHA-256(subject DER)
+ *           byte[] spkiHash      -- SHA-256(SubjectPublicKeyInfo), 32 bytes
+ *           long   keyIdHash     -- KeyIdentifiers.hash(SKI), or 0 without one
+ *           int    derOffset     -- from the start of the index
+ *           int    derLength }
+ * DER-encoded certificates
+ * </pre>
+ * <p>
+ * Entries are sorted by subject hash, so every anchor sharing a subject can
+ * be found with a binary search.  When the index is opened, small hash tables
+ * are built over the SPKI and key identifier columns, so an anchor can also be
+ * found directly by its key.  A certificate is only parsed the first time a
+ * chain actually reaches it.
+ * </p>
+ */
+final class TrustAnchorIndex {
+
+  static final int MAGIC   = 0x50494e58;
+  static final int VERSION = 2;
+
+  private static final int HEADER_LENGTH     = 12;
+  private static final int SPKI_HASH_LENGTH  = PinSet.SHA256_LENGTH;
+  private static final int SPKI_HASH_OFFSET  = 8;
+  private static final int KEY_ID_OFFSET     = SPKI_HASH_OFFSET + SPKI_HASH_LENGTH;
+  private static final int DER_OFFSET_OFFSET = KEY_ID_OFFSET + 8;
+  private static final int DER_LENGTH_OFFSET = DER_OFFSET_OFFSET + 4;
+  private static final int ENTRY_LENGTH      = DER_LENGTH_OFFSET + 4;
+
+  private static final ThreadLocal<MessageDigest> SUBJECT_DIGESTS = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException nsae) {
+        throw new AssertionError(nsae);
+      }
+    }
+  };
+
+  private final ByteBuffer                            index;
+  private final int                                   count;
+  private final AtomicReferenceArray<X509Certificate> certificates;
+  private final PositionTable                         spkiHashes;
+  private final PositionTable                         keyIdentifiers;
+
+  public TrustAnchorIndex(ByteBuffer index) throws IOException {
+    if (index.capacity() < HEADER_LENGTH ||
+        index.getInt(0) != MAGIC         ||
+        index.getInt(4) != VERSION)
+    {
+      throw new IOException("Not a version " + VERSION + " trust anchor index!");
+    }
+
+    final int count = index.getInt(8);
+
+    // Checked before anything is sized by it, so a corrupt count is reported
+    // as a bad index rather than a NegativeArraySizeException or OOM.
+    if (count < 0 || HEADER_LENGTH + (long) count * ENTRY_LENGTH > index.capacity()) {
+      throw new IOException("Truncated trust anchor index!");
+    }
+
+    this.index        = index;
+    this.count        = count;
+    this.certificates = new AtomicReferenceArray<X509Certificate>(count);
+
+    this.spkiHashes     = new PositionTable(count);
+    this.keyIdentifiers = new PositionTable(count);
+
+    for (int position = 0; position < count; position++) {
+      final int  entry     = entryOffset(position);
+      final long keyIdHash = index.getLong(entry + KEY_ID_OFFSET);
+
+      if (!hasValidDer(entry)) {
+        throw new IOException("Trust anchor index entry " + position + " points outside the index!");
+      }
+
+      spkiHashes.put(index.getLong(entry + SPKI_HASH_OFFSET), position);
+
+      if (keyIdHash != 0) {
+        keyIdentifiers.put(keyIdHash, position);
+      }
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return The position of the first anchor with this subject, or -1 if there is none.
+   *         Anchors sharing a subject are adjacent, so callers can keep scanning while
+   *         {@link #hasSubjectHash(int, long)} holds.
+   */
+  public int firstIndexOf(long subjectHash) {
+    int low  = 0;
+    int high = count;
+
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+
+      if (subjectHashAt(middle) < subjectHash) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low < count && subjectHashAt(low) == subjectHash ? low : -1;
+  }
+
+  public boolean hasSubjectHash(int position, long subjectHash) {
+    return position < count && subjectHashAt(position) == subjectHash;
+  }
+
+  /**
+   * @return Whether an anchor has both this subject and this SubjectPublicKeyInfo.
+   */
+  public boolean contains(long subjectHash, byte[] spkiHash) {
+    final long key = prefix(spkiHash);
+
+    int slot = spkiHashes.find(key, spkiHashes.start(key));
+
+    while (slot != -1) {
+      final int position = spkiHashes.positionAt(slot);
+
+      if (subjectHashAt(position) == subjectHash && hasSpkiHash(position, spkiHash)) {
+        return true;
+      }
+
+      slot = spkiHashes.find(key, slot + 1);
+    }
+
+    return false;
+  }
+
+  /**
+   * @return The positions of every anchor whose Subject Key Identifier matches.
+   */
+  public int[] findByKeyIdentifier(byte[] keyIdentifier) {
+    final long key     = KeyIdentifiers.hash(keyIdentifier);
+    int[]      matches = new int[0];
+
+    int slot = keyIdentifiers.find(key, keyIdentifiers.start(key));
+
+    while (slot != -1) {
+      matches                     = Arrays.copyOf(matches, matches.length + 1);
+      matches[matches.length - 1] = keyIdentifiers.positionAt(slot);
+      slot                        = keyIdentifiers.find(key, slot + 1);
+    }
+
+    return matches;
+  }
+
+  public boolean hasSpkiHash(int position, byte[] spkiHash) {
+    final int base = entryOffset(position) + SPKI_HASH_OFFSET;
+
+    for (int i = 0; i < SPKI_HASH_LENGTH; i++) {
+      if (index.get(base + i) != spkiHash[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public X509Certificate getCertificate(int position) {
+    final X509Certificate cached = certificates.get(position);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    final int entry = entryOffset(position);
+
+    // Already checked when the index was opened, but a mapped file can
+    // still change underneath it.
+    if (!hasValidDer(entry)) {
+      throw new IllegalStateException("Trust anchor index entry " + position + " points outside the index!");
+    }
+
+    final byte[]     encoded = new byte[index.getInt(entry + DER_LENGTH_OFFSET)];
+    final ByteBuffer der     = index.duplicate();
+
+    der.position(index.getInt(entry + DER_OFFSET_OFFSET));
+    der.get(encoded);
+
+    try {
+      final CertificateFactory factory     = CertificateFactory.getInstance("X509");
+      final X509Certificate    certificate = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(encoded));
+
+      certificates.compareAndSet(position, null, certificate);
+      return certificates.get(position);
+    } catch (CertificateException ce) {
+      throw new AssertionError(ce);
+    }
+  }
+
+  /**
+   * @return A SHA-256 over the entry table, which identifies this set of anchors.
+   */
+  public byte[] fingerprint() {
+    final ByteBuffer entries = index.duplicate();
+    entries.position(0);
+    entries.limit(entryOffset(count));
+
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(entries);
+
+      return digest.digest();
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AssertionError(nsae);
+    }
+  }
+
+  public static long subjectHash(X500Principal subject) {
+    return prefix(SUBJECT_DIGESTS.get().digest(subject.getEncoded()));
+  }
+
+  private static long prefix(byte[] hash) {
+    long prefix = 0;
+
+    for (int i = 0; i < 8; i++) {
+      prefix = (prefix << 8) | (hash[i] & 0xff);
+    }
+
+    return prefix;
+  }
+
+  private long subjectHashAt(int position) {
+    return index.getLong(entryOffset(position));
+  }
+
+  private int entryOffset(int position) {
+    return HEADER_LENGTH + position * ENTRY_LENGTH;
+  }
+
+  /**
+   * @return Whether an entry's certificate lies after the entry table and
+   *         within the index.
+   */
+  private boolean hasValidDer(int entry) {
+    final int derOffset = index.getInt(entry + DER_OFFSET_OFFSET);
+    final int derLength = index.getInt(entry + DER_LENGTH_OFFSET);
+
+    return derOffset >= entryOffset(count) &&
+           derLength > 0                   &&
+           (long) derOffset + derLength <= index.capacity();
+  }
+
+  /**
+   * Compiles a list of trust anchors into the index format above.
+   */
+  public static void write(List<X509Certificate> anchors, OutputStream out)
+      throws IOException, CertificateEncodingException
+  {
+    final List<X509Certificate> sorted = new ArrayList<X509Certificate>(anchors);
+
+    Collections.sort(sorted, new Comparator<X509Certificate>() {
+      public int compare(X509Certificate lhs, X509Certificate rhs) {
+        final long lhsHash = subjectHash(lhs.getSubjectX500Principal());
+        final long rhsHash = subjectHash(rhs.getSubjectX500Principal());
+
+        return lhsHash < rhsHash ? -1 : (lhsHash == rhsHash ? 0 : 1);
+      }
+    });
+
+    final ByteArrayOutputStream entries   = new ByteArrayOutputStream();
+    final ByteArrayOutputStream encodings = new ByteArrayOutputStream();
+    final DataOutputStream      entryOut  = new DataOutputStream(entries);
+    final int                   dataStart = HEADER_LENGTH + sorted.size() * ENTRY_LENGTH;
+
+    for (X509Certificate anchor : sorted) {
+      final byte[] encoded = anchor.getEncoded();
+
+      entryOut.writeLong(subjectHash(anchor.getSubjectX500Principal()));
+
+      try {
+        entryOut.write(SpkiHasher.getInstance().sha256(anchor));
+      } catch (CertificateException ce) {
+        throw new CertificateEncodingException(ce.getMessage());
+      }
+
+      final byte[] keyIdentifier = KeyIdentifiers.getSubjectKeyIdentifier(anchor);
+      entryOut.writeLong(keyIdentifier == null ? 0 : KeyIdentifiers.hash(keyIdentifier));
+
+      entryOut.writeInt(dataStart + encodings.size());
+      entryOut.writeInt(encoded.length);
+      encodings.write(encoded);
+    }
+
+    final DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeInt(sorted.size());
+    header.flush();
+
+    entries.writeTo(out);
+    encodings.writeTo(out);
+    out.flush();
+  }
+
+  /**
+   * A multi-valued, open-addressed map from 64-bit hashes to index positions.
+   */
+  private static final class PositionTable {
+
+    private final long[] keys;
+    private final int[]  positions;
+    private final int    mask;
+
+    PositionTable(int count) {
+      int slots = 2;
+
+      while (slots < count * 2) {
+        slots <<= 1;
+      }
+
+      this.keys      = new long[slots];
+      this.positions = new int[slots];
+      this.mask      = slots - 1;
+
+      Arrays.fill(positions, -1);
+    }
+
+    void put(long key, int position) {
+      int slot = start(key);
+
+      while (positions[slot] != -1) {
+        slot = (slot + 1) & mask;
+      }
+
+      keys[slot]      = key;
+      positions[slot] = position;
+    }
+
+    int start(long key) {
+      return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * @return The first slot at or after this one holding key, or -1.
+     */
+    int find(long key, int slot) {
+      for (slot &= mask; positions[slot] != -1; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          return slot;
+        }
+      }
+
+      return -1;
+    }
+
+    int positionAt(int slot) {
+      return positions[slot];
+    }
+  }
+}
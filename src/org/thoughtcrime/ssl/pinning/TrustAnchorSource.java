@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Somewhere a {@link TrustAnchorStore} can load its trust anchors from.
+ *
+ * <p>
+ * {@link BundledTrustAnchorSource} is the AOSP trust store that ships with
+ * this library, and what {@link SystemKeyStore} uses on Android.  Off Android,
+ * {@link PemDirectoryTrustAnchorSource} reads a directory of PEM files and
+ * {@link KeyStoreTrustAnchorSource} reads a KeyStore file, such as the JDK's
+ * cacerts.  To load anchors from anywhere else, extend this class and
+ * implement {@link #getCertificates()}.
+ * </p>
+ */
+public abstract class TrustAnchorSource {
+
+  /**
+   * @return Every trust anchor this source provides.
+   */
+  public abstract List<X509Certificate> getCertificates() throws IOException, CertificateException;
+
+  /**
+   * Loads this source's anchors as an index.  By default that means compiling
+   * {@link #getCertificates()} in memory; sources that have a precompiled
+   * index on hand can return it directly.
+   */
+  TrustAnchorIndex getIndex() throws IOException, CertificateException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TrustAnchorIndex.write(getCertificates(), out);
+
+    return new TrustAnchorIndex(ByteBuffer.wrap(out.toByteArray()));
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * A set of trust anchors that certificate chains are validated against.
+ *
+ * <p>
+ * The anchors are held as a {@link TrustAnchorIndex}, and individual anchors
+ * are only parsed when a chain reaches them, until a platform TrustManager
+ * needs them all (see {@link #getTrustStore()}).  On Android, use
+ * {@link SystemKeyStore#getInstance(android.content.Context)}, which loads the
+ * bundled trust store once per process.  Elsewhere, construct one from a
+ * {@link TrustAnchorSource}; there can be as many as you need.
+ * </p>
+ */
+public class TrustAnchorStore {
+
+  private final TrustAnchorIndex trustAnchors;
+  private final long             loadTimeMillis;
+
+  private volatile KeyStore trustStore;
+
+  /**
+   * Loads a TrustAnchorStore on the calling thread.
+   */
+  public TrustAnchorStore(TrustAnchorSource source) throws IOException, CertificateException {
+    final long startTime = System.nanoTime();
+    this.trustAnchors    = source.getIndex();
+    this.loadTimeMillis  = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+  }
+
+  TrustAnchorStore(TrustAnchorIndex trustAnchors) {
+    this.trustAnchors   = trustAnchors;
+    this.loadTimeMillis = 0;
+  }
+
+  /**
+   * @return How long (in milliseconds) it took to load the trust anchor index.
+   */
+  public long getLoadTimeMillis() {
+    return loadTimeMillis;
+  }
+
+  public boolean isTrustRoot(X509Certificate certificate) {
+    try {
+      final long   subjectHash = TrustAnchorIndex.subjectHash(certificate.getSubjectX500Principal());
+      final byte[] spkiHash    = SpkiHasher.getInstance().sha256(certificate);
+
+      return trustAnchors.contains(subjectHash, spkiHash);
+    } catch (CertificateException ce) {
+      return false;
+    }
+  }
+
+  public X509Certificate getTrustRootFor(X509Certificate certificate) {
+    final X500Principal issuer = certificate.getIssuerX500Principal();
+
+    if (issuer.equals(certificate.getSubjectX500Principal())) {
+      return null;
+    }
+
+    // Follow the Authority Key Identifier straight to the issuing key, if there is one.
+    final byte[] authorityKeyIdentifier = KeyIdentifiers.getAuthorityKeyIdentifier(certificate);
+
+    if (authorityKeyIdentifier != null) {
+      for (int position : trustAnchors.findByKeyIdentifier(authorityKeyIdentifier)) {
+        final X509Certificate trustRoot = trustAnchors.getCertificate(position);
+
+        if (isIssuedBy(certificate, trustRoot)) {
+          return trustRoot;
+        }
+      }
+    }
+
+    // Otherwise consider every anchor with the issuer's subject, since
+    // cross-signed roots can share one.
+    final long issuerHash = TrustAnchorIndex.subjectHash(issuer);
+    int        position   = trustAnchors.firstIndexOf(issuerHash);
+
+    if (position == -1) {
+      return null;
+    }
+
+    for (; trustAnchors.hasSubjectHash(position, issuerHash); position++) {
+      final X509Certificate trustRoot = trustAnchors.getCertificate(position);
+
+      if (isIssuedBy(certificate, trustRoot)) {
+        return trustRoot;
+      }
+    }
+
+    return null;
+  }
+
+  private boolean isIssuedBy(X509Certificate certificate, X509Certificate trustRoot) {
+    if (!trustRoot.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+      return false;
+    }
+
+    return LinkVerificationCache.verify(certificate, trustRoot);
+  }
+
+  /**
+   * @return A digest that changes whenever the set of trust anchors does.
+   */
+  byte[] getFingerprint() {
+    return trustAnchors.fingerprint();
+  }
+
+  /**
+   * The trust anchors as a KeyStore, for initializing a platform TrustManager.
+   * The platform reads every entry into its own index when it's initialized,
+   * so a KeyStore that parsed anchors lazily wouldn't save anything.  This
+   * parses them all, but only the first time it's asked for.
+   */
+  KeyStore getTrustStore() {
+    KeyStore trustStore = this.trustStore;
+
+    if (trustStore == null) {
+      synchronized (this) {
+        trustStore = this.trustStore;
+
+        if (trustStore == null) {
+          trustStore = this.trustStore = initializeTrustStore(trustAnchors);
+        }
+      }
+    }
+
+    return trustStore;
+  }
+
+  private KeyStore initializeTrustStore(TrustAnchorIndex trustAnchors) {
+    try {
+      final KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      trustStore.load(null, null);
+
+      for (int i = 0; i < trustAnchors.size(); i++) {
+        trustStore.setCertificateEntry("anchor-" + i, trustAnchors.getCertificate(i));
+      }
+
+      return trustStore;
+    } catch (KeyStoreException kse) {
+      throw new AssertionError(kse);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    } catch (CertificateException e) {
+      throw new AssertionError(e);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used record of certificate chains that have
+ * already passed validation.  An entry is good until the leaf certificate
+ * expires or the configured time-to-live elapses, whichever comes first,
+ * and only for lookups under the pin generation it was validated with or an
+ * earlier one.  Entries from older generations are dropped lazily, as
+ * they're looked up or evicted, and count as expirations.
+ */
+class ValidatedChainCache {
+
+  private final int  capacity;
+  private final long ttlMillis;
+
+  private final LinkedHashMap<ChainDigest, ValidatedChain> entries;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private long expirationCount;
+
+  /**
+   * @param capacity The maximum number of chains to remember.
+   * @param ttlMillis The maximum time (in milliseconds) to trust a validation
+   *                  result, or 0 to trust it until the leaf certificate expires.
+   */
+  public ValidatedChainCache(final int capacity, long ttlMillis) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+    }
+
+    if (ttlMillis < 0) {
+      throw new IllegalArgumentException("Cache TTL must not be negative: " + ttlMillis);
+    }
+
+    this.capacity  = capacity;
+    this.ttlMillis = ttlMillis;
+    this.entries   = new LinkedHashMap<ChainDigest, ValidatedChain>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ChainDigest, ValidatedChain> eldest) {
+        if (size() > capacity) {
+          evictionCount++;
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @param generation The pin generation the caller is validating under.
+   */
+  public synchronized boolean contains(ChainDigest chain, long generation) {
+    final ValidatedChain entry = entries.get(chain);
+
+    if (entry == null) {
+      missCount++;
+      return false;
+    }
+
+    if (entry.generation < generation || System.currentTimeMillis() >= entry.expiresAt) {
+      entries.remove(chain);
+      expirationCount++;
+      missCount++;
+      return false;
+    }
+
+    hitCount++;
+    return true;
+  }
+
+  /**
+   * @param generation The pin generation the chain was validated under.
+   * @return When (in milliseconds) the entry expires, or 0 if the leaf
+   *         already has and nothing was added.
+   */
+  public synchronized long add(ChainDigest chain, X509Certificate leaf, long generation) {
+    final long now       = System.currentTimeMillis();
+    long       expiresAt = leaf.getNotAfter().getTime();
+
+    if (ttlMillis != 0 && now + ttlMillis < expiresAt) {
+      expiresAt = now + ttlMillis;
+    }
+
+    if (expiresAt <= now) {
+      return 0;
+    }
+
+    entries.put(chain, new ValidatedChain(expiresAt, generation));
+    return expiresAt;
+  }
+
+  /**
+   * Adds an entry that was validated earlier, for instance by a previous
+   * process, unless the chain is already present.
+   */
+  public synchronized void restore(ChainDigest chain, long expiresAt, long generation) {
+    if (expiresAt > System.currentTimeMillis() && !entries.containsKey(chain)) {
+      entries.put(chain, new ValidatedChain(expiresAt, generation));
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized CacheStatistics getStatistics() {
+    return new CacheStatistics(hitCount, missCount, evictionCount,
+                               expirationCount, entries.size(), capacity);
+  }
+
+  private static final class ValidatedChain {
+    final long expiresAt;
+    final long generation;
+
+    ValidatedChain(long expiresAt, long generation) {
+      this.expiresAt  = expiresAt;
+      this.generation = generation;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+/**
+ * Receives measurements from a PinningTrustManager as it validates chains.
+ *
+ * <p>
+ * Callbacks run on the handshaking thread, inside checkServerTrusted, so an
+ * implementation has to be thread safe and cheap.  {@link #NONE} discards
+ * everything and is the default; {@link AtomicValidationMetrics} keeps
+ * counters and latency histograms that are safe to leave on in production.
+ * </p>
+ */
+public interface ValidationMetrics {
+
+  /**
+   * The stages of validating a chain that isn't cached.
+   */
+  public enum Phase {
+    /** The platform TrustManager's validation, in SYSTEM_THEN_PINS mode. */
+    SYSTEM_TRUST,
+    /** Sifting the presented chain down to a path that ends at a trust anchor. */
+    CHAIN_CLEAN,
+    /** PKIX validation of the cleaned path, in SINGLE_PASS mode. */
+    PATH_VALIDATION,
+    /** Looking for a pinned key in the cleaned path. */
+    PIN_MATCH,
+    /** All of checkServerTrusted, cached or not. */
+    TOTAL
+  }
+
+  /**
+   * Why a chain was rejected.
+   */
+  public enum Failure {
+    /** The platform TrustManager rejected the chain. */
+    SYSTEM_TRUST,
+    /** No path from the end entity to a trust anchor could be found. */
+    NO_TRUST_ANCHOR,
+    /** The cleaned path failed PKIX validation. */
+    PATH_VALIDATION,
+    /** The cleaned path didn't contain a pinned key. */
+    NO_PIN_MATCH
+  }
+
+  /**
+   * Discards every measurement.
+   */
+  public static final ValidationMetrics NONE = new ValidationMetrics() {
+    public void onCacheHit() {}
+    public void onCacheMiss() {}
+    public void onPhase(Phase phase, long nanos) {}
+    public void onFailure(Failure failure) {}
+    public void onStalePins() {}
+  };
+
+  /**
+   * A chain was accepted because it had already been validated, along with
+   * its host's pins if it has any.  Each validation reports either this or
+   * {@link #onCacheMiss()}, never both.
+   */
+  public void onCacheHit();
+
+  /**
+   * A chain, or its host's pins, had to be validated.
+   */
+  public void onCacheMiss();
+
+  /**
+   * @param phase The phase that completed, successfully or not.
+   * @param nanos How long it took.
+   */
+  public void onPhase(Phase phase, long nanos);
+
+  public void onFailure(Failure failure);
+
+  /**
+   * Pins weren't enforced because their enforcement deadline has passed.
+   */
+  public void onStalePins();
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+/**
+ * How a PinningTrustManager validates a chain it hasn't seen before.
+ */
+public enum ValidationMode {
+
+  /**
+   * Run the platform's X509TrustManager over the presented chain, then
+   * clean the chain separately and look for a pin in it.  This is the
+   * default, and never does worse than the platform does on its own.
+   */
+  SYSTEM_THEN_PINS,
+
+  /**
+   * Clean the chain once, validate that path against the trust anchor it
+   * ends at with PKIX, and look for a pin in the same path.  This skips the
+   * platform TrustManager (and the KeyStore of every trust anchor it needs),
+   * so a cold handshake parses and verifies each certificate only once.
+   *
+   * <p>
+   * The path gets the checks the platform applies on its own: PKIX
+   * validation, validity of an end entity that's itself a trust anchor, the
+   * end entity's key usage for the key exchange and its extended key usage,
+   * Android's minimum key sizes, and Android's blacklist of compromised
+   * certificates and public keys.  Signatures made with MD2, MD4, MD5 or
+   * SHA-1 are rejected outright, which is stricter than older platforms.
+   * Neither mode gets certificate transparency or revocation checks, since
+   * the platform only applies those when it's given the peer's hostname.
+   * </p>
+   * <p>
+   * Chains validated this way aren't kept by
+   * {@link PinningTrustManager#enablePersistentCache(java.io.File)}.
+   * </p>
+   */
+  SINGLE_PASS
+}
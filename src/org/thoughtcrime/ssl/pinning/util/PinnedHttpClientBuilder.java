@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning.util;
+
+import android.content.Context;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.thoughtcrime.ssl.pinning.PinSet;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a pooled HttpClient that validates SSL connections with the shared
+ * PinningSSLSocketFactory for its pins.  Anything left unset keeps
+ * HttpClient's own default.
+ *
+ * <p>
+ * To use:
+ * <pre>
+ * HttpClient httpClient = new PinnedHttpClientBuilder(context, pins)
+ *     .setMaxTotalConnections(16)
+ *     .setMaxConnectionsPerRoute(8)
+ *     .setKeepAliveMillis(30 * 1000)
+ *     .setIdleConnectionTimeoutMillis(60 * 1000)
+ *     .setConnectionTimeoutMillis(15 * 1000)
+ *     .setSocketTimeoutMillis(30 * 1000)
+ *     .build();
+ * </pre>
+ * </p>
+ */
+public class PinnedHttpClientBuilder {
+
+  private final Context context;
+  private final PinSet  pins;
+
+  private long                        enforceUntilTimestampMillis    = 0;
+  private int                         maxTotalConnections            = ConnManagerParams.DEFAULT_MAX_TOTAL_CONNECTIONS;
+  private int                         maxConnectionsPerRoute         = ConnPerRouteBean.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private long                        connectionRequestTimeoutMillis = 0;
+  private int                         connectionTimeoutMillis        = 0;
+  private int                         socketTimeoutMillis            = 0;
+  private ConnectionKeepAliveStrategy keepAliveStrategy              = null;
+  private long                        idleConnectionTimeoutMillis    = 0;
+
+  /**
+   * @param pins An array of encoded pins to match a seen certificate
+   *             chain against. A pin is a hex-encoded hash of a X.509 certificate's
+   *             SubjectPublicKeyInfo, or a base64 one prefixed with "sha256/" or "sha1/".
+   */
+  public PinnedHttpClientBuilder(Context context, String[] pins) {
+    this(context, new PinSet(pins));
+  }
+
+  /**
+   * @param pins The pins to match a seen certificate chain against.
+   */
+  public PinnedHttpClientBuilder(Context context, PinSet pins) {
+    this.context = context;
+    this.pins    = pins;
+  }
+
+  /**
+   * @param enforceUntilTimestampMillis A timestamp (in milliseconds) when pins will stop being
+   *                                    enforced, or 0 to enforce pins forever.
+   */
+  public PinnedHttpClientBuilder setEnforceUntilTimestampMillis(long enforceUntilTimestampMillis) {
+    this.enforceUntilTimestampMillis = enforceUntilTimestampMillis;
+    return this;
+  }
+
+  public PinnedHttpClientBuilder setMaxTotalConnections(int maxTotalConnections) {
+    if (maxTotalConnections <= 0) {
+      throw new IllegalArgumentException("Connection limit must be positive: " + maxTotalConnections);
+    }
+
+    this.maxTotalConnections = maxTotalConnections;
+    return this;
+  }
+
+  public PinnedHttpClientBuilder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    if (maxConnectionsPerRoute <= 0) {
+      throw new IllegalArgumentException("Connection limit must be positive: " + maxConnectionsPerRoute);
+    }
+
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    return this;
+  }
+
+  /**
+   * @param connectionRequestTimeoutMillis How long to wait for a pooled connection to free up,
+   *                                       or 0 to wait indefinitely.
+   */
+  public PinnedHttpClientBuilder setConnectionRequestTimeoutMillis(long connectionRequestTimeoutMillis) {
+    this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+    return this;
+  }
+
+  /**
+   * @param connectionTimeoutMillis How long to wait for a TCP connection, or 0 to wait indefinitely.
+   */
+  public PinnedHttpClientBuilder setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+    this.connectionTimeoutMillis = connectionTimeoutMillis;
+    return this;
+  }
+
+  /**
+   * @param socketTimeoutMillis How long a read may block, or 0 to block indefinitely.
+   */
+  public PinnedHttpClientBuilder setSocketTimeoutMillis(int socketTimeoutMillis) {
+    this.socketTimeoutMillis = socketTimeoutMillis;
+    return this;
+  }
+
+  /**
+   * Keeps idle connections for as long as the server's Keep-Alive header allows,
+   * or for the given duration if the server doesn't say.
+   *
+   * @param keepAliveMillis How long to keep a connection the server didn't put a limit on.
+   */
+  public PinnedHttpClientBuilder setKeepAliveMillis(long keepAliveMillis) {
+    return setKeepAliveStrategy(new DefaultKeepAliveStrategy(keepAliveMillis));
+  }
+
+  public PinnedHttpClientBuilder setKeepAliveStrategy(ConnectionKeepAliveStrategy keepAliveStrategy) {
+    this.keepAliveStrategy = keepAliveStrategy;
+    return this;
+  }
+
+  /**
+   * Starts a background thread that closes expired connections, and connections that
+   * have sat idle in the pool for longer than the given duration.  The thread stops
+   * when the client's connection manager is shut down, or once the client has been
+   * garbage collected.
+   *
+   * @param idleConnectionTimeoutMillis The longest a pooled connection may sit unused,
+   *                                    or 0 to not evict idle connections.
+   */
+  public PinnedHttpClientBuilder setIdleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+    this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+    return this;
+  }
+
+  public HttpClient build() {
+    final HttpParams httpParams = new BasicHttpParams();
+
+    ConnManagerParams.setMaxTotalConnections(httpParams, maxTotalConnections);
+    ConnManagerParams.setMaxConnectionsPerRoute(httpParams, new ConnPerRouteBean(maxConnectionsPerRoute));
+    ConnManagerParams.setTimeout(httpParams, connectionRequestTimeoutMillis);
+    HttpConnectionParams.setConnectionTimeout(httpParams, connectionTimeoutMillis);
+    HttpConnectionParams.setSoTimeout(httpParams, socketTimeoutMillis);
+
+    final SchemeRegistry schemeRegistry = new SchemeRegistry();
+    schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    schemeRegistry.register(new Scheme("https", PinningSocketFactoryRegistry.getSocketFactory(context, pins, enforceUntilTimestampMillis), 443));
+
+    final ClientConnectionManager connectionManager;
+
+    if (idleConnectionTimeoutMillis > 0) {
+      connectionManager = new EvictingConnectionManager(httpParams, schemeRegistry, idleConnectionTimeoutMillis);
+    } else {
+      connectionManager = new ThreadSafeClientConnManager(httpParams, schemeRegistry);
+    }
+
+    final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, httpParams);
+
+    if (keepAliveStrategy != null) {
+      httpClient.setKeepAliveStrategy(keepAliveStrategy);
+    }
+
+    return httpClient;
+  }
+
+  private static class DefaultKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final long keepAliveMillis;
+
+    public DefaultKeepAliveStrategy(long keepAliveMillis) {
+      this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      final HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+
+      while (iterator.hasNext()) {
+        final HeaderElement element = iterator.nextElement();
+
+        if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+          try {
+            return Long.parseLong(element.getValue()) * 1000;
+          } catch (NumberFormatException ignored) {
+          }
+        }
+      }
+
+      return keepAliveMillis;
+    }
+  }
+
+  /**
+   * A connection pool that's swept by an IdleConnectionEvictor, and stops it
+   * when it's shut down.
+   */
+  private static class EvictingConnectionManager extends ThreadSafeClientConnManager {
+    private final IdleConnectionEvictor evictor;
+
+    public EvictingConnectionManager(HttpParams httpParams, SchemeRegistry schemeRegistry,
+                                     long idleTimeoutMillis)
+    {
+      super(httpParams, schemeRegistry);
+      this.evictor = new IdleConnectionEvictor(this, idleTimeoutMillis);
+      this.evictor.start();
+    }
+
+    @Override
+    public void shutdown() {
+      evictor.interrupt();
+      super.shutdown();
+    }
+  }
+
+  /**
+   * Sweeps a connection pool until it's interrupted, or the pool is garbage
+   * collected.  It only holds the pool weakly, so that a client the app has
+   * dropped without shutting it down can still be collected.
+   */
+  private static class IdleConnectionEvictor extends Thread {
+    private final WeakReference<ClientConnectionManager> connectionManager;
+    private final long                                   idleTimeoutMillis;
+
+    public IdleConnectionEvictor(ClientConnectionManager connectionManager, long idleTimeoutMillis) {
+      super("IdleConnectionEvictor");
+      this.connectionManager = new WeakReference<ClientConnectionManager>(connectionManager);
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Thread.sleep(idleTimeoutMillis);
+
+          final ClientConnectionManager manager = connectionManager.get();
+
+          if (manager == null) {
+            return;
+          }
+
+          manager.closeExpiredConnections();
+          manager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException e) {
+        // The pool was shut down.
+      }
+    }
+  }
+}
@@ -20,27 +20,17 @@ package org.thoughtcrime.ssl.pinning.util;
 import android.content.Context;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.thoughtcrime.ssl.pinning.PinSet;
 import org.thoughtcrime.ssl.pinning.PinningSSLSocketFactory;
-import org.thoughtcrime.ssl.pinning.PinningTrustManager;
-import org.thoughtcrime.ssl.pinning.SystemKeyStore;
+import org.thoughtcrime.ssl.pinning.PrewarmResult;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
 import java.io.IOException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
+import java.util.List;
+import java.util.concurrent.Future;
 
 public class PinningHelper {
 
@@ -49,28 +39,26 @@ public class PinningHelper {
    *
    * @param pins An array of encoded pins to match a seen certificate
    *             chain against. A pin is a hex-encoded hash of a X.509 certificate's
-   *             SubjectPublicKeyInfo. A pin can be generated using the provided pin.py
-   *             script: python ./tools/pin.py certificate_file.pem
+   *             SubjectPublicKeyInfo, or a base64 one prefixed with "sha256/" or "sha1/".
+   *             Both SHA-1 and SHA-256 hashes are accepted. A pin can be generated
+   *             using the provided pin.py script: python ./tools/pin.py certificate_file.pem
    */
 
   public static HttpClient getPinnedHttpClient(Context context, String[] pins) {
-    try {
-      SchemeRegistry schemeRegistry = new SchemeRegistry();
-      schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-      schemeRegistry.register(new Scheme("https", new PinningSSLSocketFactory(context, pins, 0), 443));
-
-      HttpParams httpParams                     = new BasicHttpParams();
-      ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(httpParams, schemeRegistry);
-      return new DefaultHttpClient(connectionManager, httpParams);
-    } catch (UnrecoverableKeyException e) {
-      throw new AssertionError(e);
-    } catch (KeyManagementException e) {
-      throw new AssertionError(e);
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    } catch (KeyStoreException e) {
-      throw new AssertionError(e);
-    }
+    return getPinnedHttpClient(context, new PinSet(pins));
+  }
+
+  /**
+   * Constructs an HttpClient that will validate SSL connections with a PinningTrustManager.
+   * Clients and connections for the same pins share one PinningSSLSocketFactory, so
+   * validated chains and TLS sessions carry over from one to the next.  Use a
+   * PinnedHttpClientBuilder to size the connection pool and set timeouts.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   */
+
+  public static HttpClient getPinnedHttpClient(Context context, PinSet pins) {
+    return new PinnedHttpClientBuilder(context, pins).build();
   }
 
   /**
@@ -79,33 +67,90 @@ public class PinningHelper {
    *
    * @param pins An array of encoded pins to match a seen certificate
    *             chain against. A pin is a hex-encoded hash of a X.509 certificate's
-   *             SubjectPublicKeyInfo. A pin can be generated using the provided pin.py
-   *             script: python ./tools/pin.py certificate_file.pem
+   *             SubjectPublicKeyInfo, or a base64 one prefixed with "sha256/" or "sha1/".
+   *             Both SHA-1 and SHA-256 hashes are accepted. A pin can be generated
+   *             using the provided pin.py script: python ./tools/pin.py certificate_file.pem
    *
    */
 
   public static HttpsURLConnection getPinnedHttpsURLConnection(Context context, String[] pins, URL url)
       throws IOException
   {
-    try {
-      if (!url.getProtocol().equals("https")) {
-        throw new IllegalArgumentException("Attempt to construct pinned non-https connection!");
-      }
+    return getPinnedHttpsURLConnection(context, new PinSet(pins), url);
+  }
+
+  /**
+   * Constructs an HttpsURLConnection that will validate HTTPS connections against a set of
+   * specified pins.  Connections for the same pins share one SSLContext, so TLS sessions
+   * are resumed across them.
+   *
+   * @param pins The pins to match a seen certificate chain against.
+   */
+
+  public static HttpsURLConnection getPinnedHttpsURLConnection(Context context, PinSet pins, URL url)
+      throws IOException
+  {
+    if (!url.getProtocol().equals("https")) {
+      throw new IllegalArgumentException("Attempt to construct pinned non-https connection!");
+    }
 
-      TrustManager[] trustManagers = new TrustManager[1];
-      trustManagers[0]             = new PinningTrustManager(SystemKeyStore.getInstance(context), pins, 0);
+    SSLContext sslContext = PinningSocketFactoryRegistry.getSocketFactory(context, pins, 0).getSSLContext();
 
-      SSLContext sslContext = SSLContext.getInstance("TLS");
-      sslContext.init(null, trustManagers, null);
+    HttpsURLConnection urlConnection = (HttpsURLConnection)url.openConnection();
+    urlConnection.setSSLSocketFactory(sslContext.getSocketFactory());
 
-      HttpsURLConnection urlConnection = (HttpsURLConnection)url.openConnection();
-      urlConnection.setSSLSocketFactory(sslContext.getSocketFactory());
+    return urlConnection;
+  }
 
-      return urlConnection;
-    } catch (NoSuchAlgorithmException nsae) {
-      throw new AssertionError(nsae);
-    } catch (KeyManagementException e) {
-      throw new AssertionError(e);
+  /**
+   * Connects to each host in the background.  See {@link #prewarm(Context, PinSet, List, int)}.
+   *
+   * @param pins An array of encoded pins to match each host's certificate chain against.
+   */
+
+  public static Future<List<PrewarmResult>> prewarm(Context context, String[] pins,
+                                                    List<String> hosts, int concurrency)
+  {
+    return prewarm(context, new PinSet(pins), hosts, concurrency);
+  }
+
+  /**
+   * Connects to each host in the background, so that the TLS sessions and validated
+   * chains are ready for the first HttpClient or HttpsURLConnection this class builds
+   * for the same pins.  Call this early, when the app starts.
+   *
+   * @param pins The pins to match each host's certificate chain against.
+   * @param hosts The hosts to connect to, on port 443.
+   * @param concurrency The most hosts to connect to at once.
+   * @return A Future that completes with how long each host took to warm up.
+   */
+
+  public static Future<List<PrewarmResult>> prewarm(Context context, PinSet pins,
+                                                    List<String> hosts, int concurrency)
+  {
+    return PinningSocketFactoryRegistry.getSocketFactory(context, pins, 0).prewarm(hosts, concurrency);
+  }
+
+  /**
+   * Connects to each host in the background and parks the connections in an
+   * HttpClient's pool, so that the client's first request to each host can use one
+   * straight away.  The client has to be one that PinningHelper or a
+   * PinnedHttpClientBuilder built.
+   *
+   * @param client The client whose connection pool the connections go into.
+   * @param hosts The hosts to connect to, on port 443.
+   * @param concurrency The most hosts to connect to at once.
+   * @return A Future that completes with how long each host took to warm up.
+   */
+
+  public static Future<List<PrewarmResult>> prewarm(HttpClient client, List<String> hosts, int concurrency) {
+    final SocketFactory socketFactory =
+        client.getConnectionManager().getSchemeRegistry().getScheme("https").getSocketFactory();
+
+    if (!(socketFactory instanceof PinningSSLSocketFactory)) {
+      throw new IllegalArgumentException("Client doesn't use a PinningSSLSocketFactory for https!");
     }
+
+    return ((PinningSSLSocketFactory) socketFactory).prewarm(hosts, concurrency, client);
   }
 }
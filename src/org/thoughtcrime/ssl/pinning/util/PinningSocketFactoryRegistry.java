@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning.util;
+
+import android.content.Context;
+
+import org.thoughtcrime.ssl.pinning.PinSet;
+import org.thoughtcrime.ssl.pinning.PinningSSLSocketFactory;
+
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out one PinningSSLSocketFactory per distinct pin set and enforcement
+ * deadline.  Everything PinningHelper builds for the same pins shares a trust
+ * manager, and with it the validated chain cache and the TLS session cache.
+ *
+ * <p>
+ * Only the most recently used factories are kept, so that an app which
+ * rotates its pins doesn't keep every old pin set's SSLContext and caches
+ * alive for the rest of the process.  Clients built with a factory that's
+ * since been dropped keep using it; it's just not handed out again.
+ * </p>
+ */
+class PinningSocketFactoryRegistry {
+
+  private static final int MAX_FACTORIES = 4;
+
+  private static final Map<Key, PinningSSLSocketFactory> factories =
+      new LinkedHashMap<Key, PinningSSLSocketFactory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, PinningSSLSocketFactory> eldest) {
+          return size() > MAX_FACTORIES;
+        }
+      };
+
+  private PinningSocketFactoryRegistry() {}
+
+  public static PinningSSLSocketFactory getSocketFactory(Context context, PinSet pins,
+                                                         long enforceUntilTimestampMillis)
+  {
+    final Key key = new Key(pins, enforceUntilTimestampMillis);
+
+    synchronized (factories) {
+      final PinningSSLSocketFactory factory = factories.get(key);
+
+      if (factory != null) {
+        return factory;
+      }
+    }
+
+    // Built outside the lock, since loading the trust anchors can take a while.
+    // Racing callers may each build a factory, but only one is ever handed out.
+    final PinningSSLSocketFactory created = createSocketFactory(context, pins, enforceUntilTimestampMillis);
+
+    synchronized (factories) {
+      final PinningSSLSocketFactory existing = factories.get(key);
+
+      if (existing != null) {
+        return existing;
+      }
+
+      factories.put(key, created);
+      return created;
+    }
+  }
+
+  private static PinningSSLSocketFactory createSocketFactory(Context context, PinSet pins,
+                                                             long enforceUntilTimestampMillis)
+  {
+    try {
+      return new PinningSSLSocketFactory(context, pins, enforceUntilTimestampMillis);
+    } catch (UnrecoverableKeyException e) {
+      throw new AssertionError(e);
+    } catch (KeyManagementException e) {
+      throw new AssertionError(e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    } catch (KeyStoreException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static class Key {
+    private final PinSet pins;
+    private final long   enforceUntilTimestampMillis;
+
+    public Key(PinSet pins, long enforceUntilTimestampMillis) {
+      this.pins                        = pins;
+      this.enforceUntilTimestampMillis = enforceUntilTimestampMillis;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+
+      final Key that = (Key)other;
+
+      return this.enforceUntilTimestampMillis == that.enforceUntilTimestampMillis &&
+             this.pins.equals(that.pins);
+    }
+
+    @Override
+    public int hashCode() {
+      return pins.hashCode() * 31 + (int)(enforceUntilTimestampMillis ^ (enforceUntilTimestampMillis >>> 32));
+    }
+  }
+}
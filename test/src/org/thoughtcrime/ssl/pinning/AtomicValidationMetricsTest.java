@@ -0,0 +1,101 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.ValidationMetrics.Failure;
+import org.thoughtcrime.ssl.pinning.ValidationMetrics.Phase;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class AtomicValidationMetricsTest extends AndroidTestCase {
+
+  public void testValidationIsMeasured() throws Exception {
+    AtomicValidationMetrics metrics      = new AtomicValidationMetrics();
+    PinningTrustManager     trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    X509Certificate[]       chain        = TestFixtures.chain();
+
+    trustManager.setMetrics(metrics);
+    trustManager.checkServerTrusted(chain, "RSA");
+    trustManager.checkServerTrusted(chain, "RSA");
+
+    assertEquals(1, metrics.getCacheHitCount());
+    assertEquals(1, metrics.getCacheMissCount());
+    assertEquals(2, metrics.getLatency(Phase.TOTAL).getCount());
+    assertEquals(1, metrics.getLatency(Phase.SYSTEM_TRUST).getCount());
+    assertEquals(1, metrics.getLatency(Phase.CHAIN_CLEAN).getCount());
+    assertEquals(1, metrics.getLatency(Phase.PIN_MATCH).getCount());
+    assertEquals(0, metrics.getLatency(Phase.PATH_VALIDATION).getCount());
+    assertTrue(metrics.getLatency(Phase.TOTAL).getPercentileMicros(100) > 0);
+  }
+
+  public void testHostLookupsAreCountedOnce() throws Exception {
+    AtomicValidationMetrics metrics  = new AtomicValidationMetrics();
+    SystemKeyStore          keyStore = TestFixtures.testKeyStore();
+    PinPolicy               policy   = new PinPolicy.Builder()
+        .add("localhost", new PinSet(new String[] {TestFixtures.TEST_LEAF_PIN}))
+        .build();
+
+    PinningTrustManager trustManager = new PinningTrustManager(keyStore, policy, 0);
+    X509Certificate[]   chain        = TestFixtures.chain();
+
+    trustManager.setMetrics(metrics);
+    trustManager.checkServerTrusted(chain, "RSA", "localhost");
+    trustManager.checkServerTrusted(chain, "RSA", "localhost");
+
+    assertEquals(1, metrics.getCacheHitCount());
+    assertEquals(1, metrics.getCacheMissCount());
+
+    trustManager.checkServerTrusted(chain, "RSA", "unpinned.example.net");
+
+    assertEquals(2, metrics.getCacheHitCount());
+    assertEquals(1, metrics.getCacheMissCount());
+  }
+
+  public void testFailuresAreCounted() throws Exception {
+    AtomicValidationMetrics metrics      = new AtomicValidationMetrics();
+    PinningTrustManager     trustManager = TestFixtures.trustManager(TestFixtures.UNRELATED_SHA1_PIN);
+    X509Certificate[]       chain        = TestFixtures.chain();
+
+    trustManager.setMetrics(metrics);
+    trustManager.setValidationMode(ValidationMode.SINGLE_PASS);
+
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      fail("Accepted a chain without a pin!");
+    } catch (CertificateException expected) {
+      // Expected
+    }
+
+    assertEquals(1, metrics.getFailureCount(Failure.NO_PIN_MATCH));
+    assertEquals(0, metrics.getFailureCount(Failure.PATH_VALIDATION));
+    assertEquals(1, metrics.getLatency(Phase.PATH_VALIDATION).getCount());
+  }
+
+  public void testStalePinsAreCounted() throws Exception {
+    AtomicValidationMetrics metrics      = new AtomicValidationMetrics();
+    PinningTrustManager     trustManager = new PinningTrustManager(TestFixtures.testKeyStore(),
+                                                                   new String[] {TestFixtures.UNRELATED_SHA1_PIN},
+                                                                   1);
+
+    trustManager.setMetrics(metrics);
+    trustManager.checkServerTrusted(TestFixtures.chain(), "RSA");
+
+    assertEquals(1, metrics.getStalePinCount());
+    assertEquals(0, metrics.getLatency(Phase.PIN_MATCH).getCount());
+  }
+
+  public void testHistogramBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(500);
+    histogram.record(3 * 1000);
+    histogram.record(3 * 1000);
+    histogram.record(1000 * 1000);
+
+    assertEquals(4, histogram.getCount());
+    assertEquals(1, histogram.getPercentileMicros(25));
+    assertEquals(4, histogram.getPercentileMicros(75));
+    assertEquals(1024, histogram.getPercentileMicros(100));
+  }
+}
@@ -0,0 +1,42 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BackgroundWriterTest extends AndroidTestCase {
+
+  public void testBurstsAreWrittenOnce() throws Exception {
+    final AtomicInteger writes = new AtomicInteger();
+
+    BackgroundWriter writer = new BackgroundWriter(null) {
+      @Override
+      protected void write() throws IOException {
+        writes.incrementAndGet();
+      }
+    };
+
+    for (int i = 0; i < 100; i++) {
+      writer.schedule();
+    }
+
+    assertEquals(0, writes.get());
+    awaitWrites(writes, 1);
+
+    writer.schedule();
+    awaitWrites(writes, 2);
+  }
+
+  private static void awaitWrites(AtomicInteger writes, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + BackgroundWriter.DELAY_MILLIS + 10 * 1000;
+
+    while (writes.get() < expected) {
+      assertTrue("Never written!", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+
+    Thread.sleep(100);
+    assertEquals(expected, writes.get());
+  }
+}
@@ -0,0 +1,61 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchValidationTest extends AndroidTestCase {
+
+  public void testResultsFollowInputOrder() throws Exception {
+    X509Certificate   leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    X509Certificate   intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    X509Certificate[] good         = new X509Certificate[] {leaf, intermediate};
+    X509Certificate[] orphan       = new X509Certificate[] {leaf};
+
+    List<X509Certificate[]> chains = new ArrayList<X509Certificate[]>();
+    chains.add(good);
+    chains.add(orphan);
+    chains.add(good);
+
+    List<ChainValidationResult> results = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN).checkServerTrusted(chains, "RSA");
+
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).isTrusted());
+    assertFalse(results.get(1).isTrusted());
+    assertNotNull(results.get(1).getFailure());
+    assertTrue(results.get(2).isTrusted());
+    assertSame(orphan, results.get(1).getChain());
+  }
+
+  public void testDuplicateChainsAreValidatedOnce() throws Exception {
+    X509Certificate[]       chain  = TestFixtures.chain();
+    List<X509Certificate[]> chains = new ArrayList<X509Certificate[]>();
+
+    for (int i = 0; i < 16; i++) {
+      chains.add(chain.clone());
+    }
+
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    ExecutorService     executor     = Executors.newFixedThreadPool(4);
+
+    try {
+      for (ChainValidationResult result : trustManager.checkServerTrusted(chains, "RSA", executor)) {
+        assertTrue(result.isTrusted());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, trustManager.getCacheStatistics().getMissCount());
+
+    // The batch filled the cache, so a handshake doesn't validate again.
+    trustManager.checkServerTrusted(chain, "RSA");
+    assertEquals(1, trustManager.getCacheStatistics().getHitCount());
+  }
+}
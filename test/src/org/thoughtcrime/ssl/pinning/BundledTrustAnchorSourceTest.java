@@ -0,0 +1,13 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.nio.MappedByteBuffer;
+
+public class BundledTrustAnchorSourceTest extends AndroidTestCase {
+
+  public void testIndexIsMapped() throws Exception {
+    assertTrue("The trust anchor index was packaged compressed!",
+               new BundledTrustAnchorSource(getContext()).mapTrustAnchorIndex() instanceof MappedByteBuffer);
+  }
+}
@@ -0,0 +1,49 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class CertificateBlacklistTest extends AndroidTestCase {
+
+  private static final String TEST_INTERMEDIATE_KEY_SHA1 = "3995c07c947f35ceb1f4395a2e0f9bc808e052cb";
+  private static final String TEST_LEAF_SERIAL_NUMBER    = "0121ee08af3b578e5fa228187860f0e78119bc81";
+
+  public void testPlatformBlacklistAllowsTestChain() throws Exception {
+    assertValid(CertificateBlacklist.getPlatformBlacklist());
+  }
+
+  public void testBlacklistedKeysAreRejected() throws Exception {
+    assertInvalid(new CertificateBlacklist(new String[] {TEST_INTERMEDIATE_KEY_SHA1}, new String[0]));
+  }
+
+  public void testBlacklistedSerialNumbersAreRejected() throws Exception {
+    assertInvalid(new CertificateBlacklist(new String[0], new String[] {TEST_LEAF_SERIAL_NUMBER}));
+  }
+
+  private static void assertValid(CertificateBlacklist blacklist) throws Exception {
+    X509Certificate root = TestCertificates.parse(TestCertificates.TEST_ROOT);
+
+    CertificatePathValidator.validate(createCleanChain(root), "RSA",
+                                      TestFixtures.keyStore(root), blacklist);
+  }
+
+  private static void assertInvalid(CertificateBlacklist blacklist) throws Exception {
+    try {
+      assertValid(blacklist);
+    } catch (CertificateException e) {
+      return;
+    }
+
+    fail("Accepted a blacklisted certificate!");
+  }
+
+  private static X509Certificate[] createCleanChain(X509Certificate root) throws CertificateException {
+    return new X509Certificate[] {TestCertificates.parse(TestCertificates.TEST_LEAF),
+                                  TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE),
+                                  root};
+  }
+}
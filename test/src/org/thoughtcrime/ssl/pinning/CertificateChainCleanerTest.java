@@ -0,0 +1,125 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CertificateChainCleanerTest extends AndroidTestCase {
+
+  private X509Certificate       root;
+  private X509Certificate       intermediate;
+  private X509Certificate       leaf;
+  private List<X509Certificate> unrelated;
+  private TrustAnchorStore      keyStore;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    unrelated    = Arrays.asList(TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY),
+                                 TestCertificates.parse(TestCertificates.EQUIFAX_ROOT),
+                                 TestCertificates.parse(TestCertificates.VERISIGN_CLASS_THREE));
+    keyStore     = TestFixtures.keyStore(root);
+  }
+
+  public void testOrderedChain() throws Exception {
+    assertPath(clean(leaf, intermediate), leaf, intermediate, root);
+    assertPath(clean(leaf, intermediate, root), leaf, intermediate, root);
+  }
+
+  public void testEveryOrderOfThePresentedCertificates() throws Exception {
+    List<X509Certificate> rest = new ArrayList<X509Certificate>();
+    rest.add(intermediate);
+    rest.add(root);
+    rest.addAll(unrelated);
+
+    int orders = 0;
+
+    for (List<X509Certificate> order : permutations(rest)) {
+      List<X509Certificate> chain = new ArrayList<X509Certificate>();
+      chain.add(leaf);
+      chain.addAll(order);
+
+      assertPath(clean(chain.toArray(new X509Certificate[chain.size()])), leaf, intermediate, root);
+      orders++;
+    }
+
+    assertEquals(120, orders);
+  }
+
+  public void testShuffledAndPaddedChains() throws Exception {
+    Random random = new Random(0x5eedL);
+
+    for (int i = 0; i < 64; i++) {
+      List<X509Certificate> rest = new ArrayList<X509Certificate>();
+      rest.add(intermediate);
+
+      // Duplicates too, which some servers send.
+      for (int j = random.nextInt(8); j > 0; j--) {
+        rest.add(unrelated.get(random.nextInt(unrelated.size())));
+      }
+
+      if (random.nextBoolean()) {
+        rest.add(intermediate);
+      }
+
+      Collections.shuffle(rest, random);
+      rest.add(0, leaf);
+
+      assertPath(clean(rest.toArray(new X509Certificate[rest.size()])), leaf, intermediate, root);
+    }
+  }
+
+  public void testMissingIntermediateIsRejected() throws Exception {
+    List<X509Certificate> chain = new ArrayList<X509Certificate>();
+    chain.add(leaf);
+    chain.addAll(unrelated);
+
+    try {
+      clean(chain.toArray(new X509Certificate[chain.size()]));
+      fail("Cleaned a chain without its intermediate!");
+    } catch (CertificateException ce) {
+      // good
+    }
+  }
+
+  private X509Certificate[] clean(X509Certificate... chain) throws CertificateException {
+    return CertificateChainCleaner.getCleanChain(chain, keyStore);
+  }
+
+  private static void assertPath(X509Certificate[] cleanChain, X509Certificate... expected) {
+    assertEquals(Arrays.asList(expected), Arrays.asList(cleanChain));
+  }
+
+  private static List<List<X509Certificate>> permutations(List<X509Certificate> certificates) {
+    List<List<X509Certificate>> permutations = new ArrayList<List<X509Certificate>>();
+
+    if (certificates.isEmpty()) {
+      permutations.add(new ArrayList<X509Certificate>());
+      return permutations;
+    }
+
+    for (int i = 0; i < certificates.size(); i++) {
+      List<X509Certificate> rest = new ArrayList<X509Certificate>(certificates);
+      X509Certificate       head = rest.remove(i);
+
+      for (List<X509Certificate> permutation : permutations(rest)) {
+        permutation.add(0, head);
+        permutations.add(permutation);
+      }
+    }
+
+    return permutations;
+  }
+}
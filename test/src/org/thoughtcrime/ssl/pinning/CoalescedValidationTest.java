@@ -0,0 +1,87 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CoalescedValidationTest extends AndroidTestCase {
+
+  private static final int THREADS = 8;
+
+  public void testConcurrentValidationsAreCoalesced() throws Exception {
+    X509Certificate[]   chain        = TestFixtures.chain();
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    int                 failures     = validateConcurrently(trustManager, chain);
+
+    assertEquals(0, failures);
+    assertEquals(THREADS - 1, trustManager.getCoalescedValidationCount());
+
+    // The shared result was cached.
+    trustManager.checkServerTrusted(chain, "RSA");
+    assertEquals(1, trustManager.getCacheStatistics().getHitCount());
+  }
+
+  public void testFailuresAreShared() throws Exception {
+    X509Certificate[]   chain        = TestFixtures.chain();
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.UNRELATED_PIN);
+    int                 failures     = validateConcurrently(trustManager, chain);
+
+    assertEquals(THREADS, failures);
+    assertEquals(THREADS - 1, trustManager.getCoalescedValidationCount());
+
+    // Failures aren't cached, so the next attempt validates again.
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      fail("Accepted an unpinned chain!");
+    } catch (CertificateException ce) {
+      assertEquals(THREADS - 1, trustManager.getCoalescedValidationCount());
+    }
+  }
+
+  private int validateConcurrently(final PinningTrustManager trustManager, final X509Certificate[] chain)
+      throws InterruptedException
+  {
+    final AtomicInteger  failures = new AtomicInteger();
+    final CountDownLatch done     = new CountDownLatch(THREADS);
+
+    // Holds the first validation open until every other thread is waiting on it.
+    trustManager.setMetrics(new AtomicValidationMetrics() {
+      @Override
+      public void onPhase(Phase phase, long nanos) {
+        super.onPhase(phase, nanos);
+
+        if (phase == Phase.SYSTEM_TRUST) {
+          long deadline = System.currentTimeMillis() + 10 * 1000;
+
+          while (trustManager.getCoalescedValidationCount() < THREADS - 1 &&
+                 System.currentTimeMillis() < deadline)
+          {
+            Thread.yield();
+          }
+        }
+      }
+    });
+
+    for (int i = 0; i < THREADS; i++) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            trustManager.checkServerTrusted(chain, "RSA");
+          } catch (CertificateException ce) {
+            failures.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    return failures.get();
+  }
+}
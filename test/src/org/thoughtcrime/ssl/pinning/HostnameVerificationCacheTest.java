@@ -0,0 +1,45 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLException;
+
+public class HostnameVerificationCacheTest extends AndroidTestCase {
+
+  public void testVerifiedHostsAreCached() throws Exception {
+    X509Certificate           leaf  = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    HostnameVerificationCache cache = new HostnameVerificationCache(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER, 4);
+
+    cache.verify("localhost", leaf);
+    cache.verify("localhost", TestCertificates.parse(TestCertificates.TEST_LEAF));
+    cache.verify("LOCALHOST", leaf);
+
+    assertEquals(2, cache.getStatistics().getHitCount());
+    assertEquals(1, cache.getStatistics().getMissCount());
+    assertEquals(1, cache.getStatistics().getSize());
+  }
+
+  public void testMismatchesAreNotCached() throws Exception {
+    X509Certificate           leaf  = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    HostnameVerificationCache cache = new HostnameVerificationCache(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER, 4);
+
+    cache.verify("localhost", leaf);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.verify("www.example.com", leaf);
+        fail("Verified a host the certificate doesn't name!");
+      } catch (SSLException expected) {
+        // Expected
+      }
+    }
+
+    assertEquals(0, cache.getStatistics().getHitCount());
+    assertEquals(3, cache.getStatistics().getMissCount());
+  }
+}
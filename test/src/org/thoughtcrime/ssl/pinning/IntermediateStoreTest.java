@@ -0,0 +1,128 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class IntermediateStoreTest extends AndroidTestCase {
+
+  private X509Certificate root;
+  private X509Certificate intermediate;
+  private X509Certificate leaf;
+  private SystemKeyStore  keyStore;
+  private File            directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    keyStore     = TestFixtures.keyStore(root);
+    directory    = File.createTempFile("learned-intermediates", "");
+
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+    super.tearDown();
+  }
+
+  public void testLearnedIntermediatesCompleteChains() throws Exception {
+    for (ValidationMode mode : ValidationMode.values()) {
+      PinningTrustManager trustManager = createTrustManager(mode);
+
+      assertUntrusted(trustManager, leaf);
+
+      trustManager.enableIntermediateStore(8);
+      trustManager.checkServerTrusted(new X509Certificate[] {leaf, intermediate}, "RSA");
+      trustManager.clearCache();
+      trustManager.checkServerTrusted(new X509Certificate[] {leaf}, "RSA");
+
+      CacheStatistics statistics = trustManager.getIntermediateStoreStatistics();
+
+      assertEquals(1, statistics.getSize());
+      assertEquals(1, statistics.getHitCount());
+    }
+  }
+
+  public void testCompletedChainsStillHaveToMatchPins() throws Exception {
+    PinningTrustManager trustManager = createTrustManager(ValidationMode.SINGLE_PASS);
+
+    trustManager.enableIntermediateStore(8);
+    trustManager.checkServerTrusted(new X509Certificate[] {leaf, intermediate}, "RSA");
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.UNRELATED_PIN}));
+
+    assertUntrusted(trustManager, leaf);
+    assertEquals(1, trustManager.getIntermediateStoreStatistics().getHitCount());
+  }
+
+  public void testStoreIsBounded() throws Exception {
+    X509Certificate   googleWildcard  = TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD);
+    X509Certificate   googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    X509Certificate   equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    SystemKeyStore    equifaxStore    = TestFixtures.keyStore(equifaxRoot);
+    IntermediateStore store           = new IntermediateStore(null, 1);
+
+    store.learn(new X509Certificate[] {googleWildcard, googleAuthority, equifaxRoot}, equifaxStore);
+    store.learn(new X509Certificate[] {leaf, intermediate, root}, keyStore);
+
+    assertEquals(1, store.size());
+    assertEquals(1, store.getStatistics().getEvictionCount());
+    assertSame(intermediate, store.findIssuer(leaf));
+    assertNull(store.findIssuer(googleWildcard));
+  }
+
+  public void testStoreSurvivesRestart() throws Exception {
+    IntermediateStore store = new IntermediateStore(directory, 8);
+    store.load();
+    store.learn(new X509Certificate[] {leaf, intermediate, root}, keyStore);
+    store.write();
+
+    IntermediateStore restarted = new IntermediateStore(directory, 8);
+
+    assertEquals(1, restarted.load());
+    assertEquals(intermediate, restarted.findIssuer(leaf));
+  }
+
+  public void testCorruptStoreIsIgnored() throws Exception {
+    FileOutputStream out = new FileOutputStream(new File(directory, IntermediateStore.FILE_NAME));
+
+    out.write(new byte[] {0x50, 0x49, 0x4e, 0x49, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 4, 1, 2, 3, 4});
+    out.close();
+
+    IntermediateStore store = new IntermediateStore(directory, 8);
+
+    assertEquals(0, store.load());
+    assertEquals(0, store.size());
+  }
+
+  private PinningTrustManager createTrustManager(ValidationMode mode) {
+    PinningTrustManager trustManager = new PinningTrustManager(keyStore, new String[] {TestFixtures.TEST_INTERMEDIATE_PIN}, 0);
+    trustManager.setValidationMode(mode);
+
+    return trustManager;
+  }
+
+  private static void assertUntrusted(PinningTrustManager trustManager, X509Certificate... chain) {
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      fail("Accepted an incomplete chain!");
+    } catch (CertificateException ce) {
+      // good
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.X509Certificate;
+
+public class LinkVerificationCacheTest extends AndroidTestCase {
+
+  public void testVerifiedLinksAreCached() throws Exception {
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+
+    LinkVerificationCache.clear();
+
+    long hits   = LinkVerificationCache.getStatistics().getHitCount();
+    long misses = LinkVerificationCache.getStatistics().getMissCount();
+
+    assertTrue(LinkVerificationCache.verify(googleAuthority, equifaxRoot));
+    assertTrue(LinkVerificationCache.verify(TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY), equifaxRoot));
+
+    assertEquals(hits + 1, LinkVerificationCache.getStatistics().getHitCount());
+    assertEquals(misses + 1, LinkVerificationCache.getStatistics().getMissCount());
+  }
+
+  public void testFailedLinksAreNotCached() throws Exception {
+    X509Certificate googleWildcard = TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD);
+    X509Certificate equifaxRoot    = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+
+    LinkVerificationCache.clear();
+
+    assertFalse(LinkVerificationCache.verify(googleWildcard, equifaxRoot));
+    assertFalse(LinkVerificationCache.verify(googleWildcard, equifaxRoot));
+    assertEquals(0, LinkVerificationCache.getStatistics().getSize());
+  }
+}
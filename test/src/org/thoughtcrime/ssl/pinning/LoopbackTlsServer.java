@@ -0,0 +1,152 @@
+package org.thoughtcrime.ssl.pinning;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * A TLS server on the loopback interface that completes handshakes with
+ * TestCertificates.TEST_LEAF on a single selector thread, then holds each
+ * connection open until the client closes it.
+ */
+class LoopbackTlsServer implements Runnable {
+
+  private static final char[] PASSWORD = "loopback".toCharArray();
+
+  private final SSLContext          sslContext;
+  private final Selector            selector;
+  private final ServerSocketChannel serverChannel;
+  private final Thread              thread;
+
+  public LoopbackTlsServer() throws Exception {
+    this.sslContext    = createServerContext();
+    this.selector      = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    this.thread        = new Thread(this, "LoopbackTlsServer");
+
+    serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 128);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  public void close() throws IOException, InterruptedException {
+    thread.interrupt();
+    selector.wakeup();
+    thread.join();
+  }
+
+  public void run() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        selector.select();
+
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+          final SelectionKey key = keys.next();
+          keys.remove();
+
+          if (key.isValid() && key.isAcceptable()) {
+            accept();
+          } else if (key.isValid()) {
+            service(key);
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      throw new AssertionError(ioe);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        closeQuietly(key);
+      }
+
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    final SocketChannel channel = serverChannel.accept();
+
+    if (channel == null) {
+      return;
+    }
+
+    final SSLEngine engine = sslContext.createSSLEngine();
+    engine.setUseClientMode(false);
+
+    channel.configureBlocking(false);
+    channel.register(selector, SelectionKey.OP_READ, new NonBlockingHandshake(channel, engine));
+  }
+
+  private void service(SelectionKey key) {
+    final NonBlockingHandshake handshake = (NonBlockingHandshake)key.attachment();
+
+    try {
+      if (handshake.advance()) {
+        // Drain whatever the client sends until it hangs up.
+        if (handshake.getChannel().read(ByteBuffer.allocate(1024)) < 0) {
+          closeQuietly(key);
+        } else {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } else {
+        key.interestOps(handshake.getInterestOps());
+      }
+    } catch (IOException ioe) {
+      closeQuietly(key);
+    }
+  }
+
+  private static void closeQuietly(SelectionKey key) {
+    key.cancel();
+
+    try {
+      key.channel().close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  private static SSLContext createServerContext() throws Exception {
+    final X509Certificate[] chain = new X509Certificate[] {
+        TestCertificates.parse(TestCertificates.TEST_LEAF),
+        TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE)
+    };
+
+    final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    keyStore.setKeyEntry("localhost", TestCertificates.parsePrivateKey(TestCertificates.TEST_LEAF_KEY),
+                         PASSWORD, chain);
+
+    final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagerFactory.init(keyStore, PASSWORD);
+
+    final SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+    return sslContext;
+  }
+}
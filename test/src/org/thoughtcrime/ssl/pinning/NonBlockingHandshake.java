@@ -0,0 +1,119 @@
+package org.thoughtcrime.ssl.pinning;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Drives one SSLEngine's handshake over a non-blocking SocketChannel, as far
+ * as the channel allows each time it's ready.
+ */
+class NonBlockingHandshake {
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private final SocketChannel channel;
+  private final SSLEngine     engine;
+  private final ByteBuffer    networkIn;
+  private final ByteBuffer    networkOut;
+  private final ByteBuffer    applicationIn;
+
+  public NonBlockingHandshake(SocketChannel channel, SSLEngine engine) throws SSLException {
+    this.channel = channel;
+    this.engine  = engine;
+
+    final SSLSession session = engine.getSession();
+
+    this.networkIn     = ByteBuffer.allocate(session.getPacketBufferSize());
+    this.networkOut    = ByteBuffer.allocate(session.getPacketBufferSize());
+    this.applicationIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+
+    this.networkOut.flip();
+    this.engine.beginHandshake();
+  }
+
+  public SocketChannel getChannel() {
+    return channel;
+  }
+
+  public SSLEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * @return True once the handshake is complete, false if it has to wait for the channel.
+   */
+  public boolean advance() throws IOException {
+    while (true) {
+      if (networkOut.hasRemaining()) {
+        channel.write(networkOut);
+
+        if (networkOut.hasRemaining()) {
+          return false;
+        }
+      }
+
+      SSLEngineResult result;
+
+      switch (engine.getHandshakeStatus()) {
+        case NOT_HANDSHAKING:
+        case FINISHED:
+          return true;
+        case NEED_TASK:
+          Runnable task;
+
+          while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+          }
+
+          break;
+        case NEED_WRAP:
+          networkOut.clear();
+          result = engine.wrap(EMPTY, networkOut);
+          networkOut.flip();
+          checkOpen(result);
+          break;
+        default:
+          networkIn.flip();
+          result = engine.unwrap(networkIn, applicationIn);
+          networkIn.compact();
+          checkOpen(result);
+
+          if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW ||
+              (result.bytesConsumed() == 0 &&
+               result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP))
+          {
+            final int read = channel.read(networkIn);
+
+            if (read < 0) {
+              throw new EOFException("Connection closed during handshake!");
+            }
+
+            if (read == 0) {
+              return false;
+            }
+          }
+      }
+    }
+  }
+
+  /**
+   * @return The selector operations the handshake is waiting on.
+   */
+  public int getInterestOps() {
+    return networkOut.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+  }
+
+  private static void checkOpen(SSLEngineResult result) throws SSLException {
+    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+      throw new SSLException("Engine closed during handshake!");
+    }
+  }
+}
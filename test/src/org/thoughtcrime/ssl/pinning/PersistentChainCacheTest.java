@@ -0,0 +1,128 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+public class PersistentChainCacheTest extends AndroidTestCase {
+
+  // The header, one entry, and the MAC.
+  private static final int ONE_ENTRY_LENGTH = 44 + 40 + 32;
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    directory = File.createTempFile("validated-chains", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+    super.tearDown();
+  }
+
+  public void testChainsSurviveRestart() throws Exception {
+    X509Certificate[]   chain = TestFixtures.chain();
+    PinningTrustManager first = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    assertEquals(0, first.enablePersistentCache(directory).get(10, TimeUnit.SECONDS).intValue());
+    first.checkServerTrusted(chain, "RSA");
+    awaitCacheFile();
+
+    PinningTrustManager second = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    assertEquals(1, second.enablePersistentCache(directory).get(10, TimeUnit.SECONDS).intValue());
+    second.checkServerTrusted(chain, "RSA");
+    assertEquals(1, second.getCacheStatistics().getHitCount());
+  }
+
+  public void testTamperedCacheIsIgnored() throws Exception {
+    PinningTrustManager first = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    first.enablePersistentCache(directory).get(10, TimeUnit.SECONDS);
+    first.checkServerTrusted(TestFixtures.chain(), "RSA");
+    awaitCacheFile();
+
+    RandomAccessFile file = new RandomAccessFile(new File(directory, PersistentChainCache.FILE_NAME), "rw");
+    file.seek(ONE_ENTRY_LENGTH - 33);
+    file.write(file.read() ^ 1);
+    file.close();
+
+    PinningTrustManager second = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    assertEquals(0, second.enablePersistentCache(directory).get(10, TimeUnit.SECONDS).intValue());
+  }
+
+  public void testCacheIsBoundToPinsAndAnchors() throws Exception {
+    X509Certificate     root        = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate     equifaxRoot = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    PinningTrustManager first       = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    first.enablePersistentCache(directory).get(10, TimeUnit.SECONDS);
+    first.checkServerTrusted(TestFixtures.chain(), "RSA");
+    awaitCacheFile();
+
+    PinningTrustManager otherPins    = TestFixtures.trustManager(TestFixtures.TEST_INTERMEDIATE_PIN);
+    PinningTrustManager otherAnchors = new PinningTrustManager(TestFixtures.keyStore(root, equifaxRoot),
+                                                               new String[] {TestFixtures.TEST_LEAF_PIN}, 0);
+
+    assertEquals(0, otherPins.enablePersistentCache(directory).get(10, TimeUnit.SECONDS).intValue());
+    assertEquals(0, otherAnchors.enablePersistentCache(directory, PersistentChainCache.getOrCreateKey(directory))
+                                .get(10, TimeUnit.SECONDS).intValue());
+  }
+
+  public void testChainsAcceptedWithStalePinsAreNotKept() throws Exception {
+    PinningTrustManager stale = new PinningTrustManager(TestFixtures.testKeyStore(),
+                                                        new String[] {TestFixtures.UNRELATED_PIN}, 1);
+
+    stale.enablePersistentCache(directory).get(10, TimeUnit.SECONDS);
+    stale.checkServerTrusted(TestFixtures.chain(), "RSA");
+    assertNeverWritten("Kept a chain that was never checked against the pins!");
+
+    // The same pins in a later build, with a deadline that hasn't passed.
+    PinningTrustManager enforced = TestFixtures.trustManager(TestFixtures.UNRELATED_PIN);
+    assertEquals(0, enforced.enablePersistentCache(directory).get(10, TimeUnit.SECONDS).intValue());
+  }
+
+  public void testSinglePassChainsAreNotKept() throws Exception {
+    PinningTrustManager singlePass = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    singlePass.setValidationMode(ValidationMode.SINGLE_PASS);
+    singlePass.enablePersistentCache(directory).get(10, TimeUnit.SECONDS);
+    singlePass.checkServerTrusted(TestFixtures.chain(), "RSA");
+
+    assertNeverWritten("Kept a chain the platform never validated!");
+  }
+
+  private void assertNeverWritten(String message) throws InterruptedException {
+    File file     = new File(directory, PersistentChainCache.FILE_NAME);
+    long deadline = System.currentTimeMillis() + BackgroundWriter.DELAY_MILLIS + 1000;
+
+    while (System.currentTimeMillis() < deadline) {
+      assertFalse(message, file.exists());
+      Thread.sleep(10);
+    }
+  }
+
+  private void awaitCacheFile() throws InterruptedException {
+    File file     = new File(directory, PersistentChainCache.FILE_NAME);
+    long deadline = System.currentTimeMillis() + 10 * 1000;
+
+    while (file.length() != ONE_ENTRY_LENGTH) {
+      assertTrue("Cache was never written!", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class PinGenerationTest extends AndroidTestCase {
+
+  public void testUpdatesInvalidateOlderValidations() throws Exception {
+    X509Certificate[]   chain        = TestFixtures.chain();
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    trustManager.checkServerTrusted(chain, "RSA");
+    trustManager.checkServerTrusted(chain, "RSA");
+    assertEquals(0, trustManager.getPinGeneration());
+    assertEquals(1, trustManager.getCacheStatistics().getHitCount());
+
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.UNRELATED_PIN}));
+    assertEquals(1, trustManager.getPinGeneration());
+
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      fail("Accepted a chain validated under the old pins!");
+    } catch (CertificateException ce) {
+      assertEquals(1, trustManager.getCacheStatistics().getExpirationCount());
+    }
+
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.UNRELATED_PIN,
+                                                     TestFixtures.TEST_INTERMEDIATE_PIN}));
+    trustManager.checkServerTrusted(chain, "RSA");
+    trustManager.checkServerTrusted(chain, "RSA");
+
+    assertEquals(2, trustManager.getPinGeneration());
+    assertEquals(2, trustManager.getCacheStatistics().getHitCount());
+  }
+
+  public void testUpdatesOnlyInvalidateOlderGenerations() throws Exception {
+    X509Certificate[]   chain        = TestFixtures.chain();
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.TEST_INTERMEDIATE_PIN}));
+    trustManager.checkServerTrusted(chain, "RSA");
+    trustManager.checkServerTrusted(chain, "RSA");
+
+    assertEquals(1, trustManager.getCacheStatistics().getHitCount());
+    assertEquals(0, trustManager.getCacheStatistics().getExpirationCount());
+  }
+
+  public void testSwitchingToPolicy() throws Exception {
+    X509Certificate[]   chain        = TestFixtures.chain();
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.UNRELATED_PIN);
+
+    assertFalse(trustManager.hasPinPolicy());
+
+    trustManager.updatePins(new PinPolicy.Builder()
+                                .add("localhost", new String[] {TestFixtures.TEST_LEAF_PIN})
+                                .build());
+
+    assertTrue(trustManager.hasPinPolicy());
+    trustManager.checkServerTrusted(chain, "RSA", "localhost");
+
+    try {
+      trustManager.updatePins((PinSet) null);
+      fail("Accepted no pins!");
+    } catch (IllegalArgumentException iae) {
+      assertEquals(1, trustManager.getPinGeneration());
+    }
+  }
+}
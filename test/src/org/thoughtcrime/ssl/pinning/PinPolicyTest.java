@@ -0,0 +1,84 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+public class PinPolicyTest extends AndroidTestCase {
+
+  private static final PinSet EXACT     = new PinSet(new String[] {TestFixtures.UNRELATED_SHA1_PIN});
+  private static final PinSet WILDCARD  = new PinSet(new String[] {"48e668f92bd2b295d747d82320104f3398909fd4"});
+  private static final PinSet SUBDOMAIN = new PinSet(new String[] {TestFixtures.TEST_LEAF_PIN});
+
+  public void testMatching() {
+    PinPolicy policy = new PinPolicy.Builder()
+        .add("api.example.com", EXACT)
+        .add("*.example.com", WILDCARD)
+        .add("**.example.org", SUBDOMAIN)
+        .build();
+
+    assertEquals(3, policy.size());
+
+    assertPins(policy.findPins("api.example.com"), EXACT, WILDCARD);
+    assertPins(policy.findPins("API.Example.COM."), EXACT, WILDCARD);
+    assertPins(policy.findPins("www.example.com"), WILDCARD);
+    assertPins(policy.findPins("example.com"));
+    assertPins(policy.findPins("a.api.example.com"));
+    assertPins(policy.findPins("example.org"), SUBDOMAIN);
+    assertPins(policy.findPins("a.b.c.example.org"), SUBDOMAIN);
+    assertPins(policy.findPins("badexample.org"));
+    assertPins(policy.findPins("www.example.net"));
+    assertPins(policy.findPins("www..example.com"));
+  }
+
+  public void testRejectsMalformedPatterns() {
+    String[] patterns = new String[] {"", "*", "**", "*.", "a.*.example.com", "w*.example.com", "example..com"};
+
+    for (String pattern : patterns) {
+      try {
+        new PinPolicy.Builder().add(pattern, EXACT);
+        fail("Accepted " + pattern);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+    }
+  }
+
+  public void testHostPinsAreEnforced() throws Exception {
+    X509Certificate[] chain  = TestFixtures.chain();
+    PinPolicy         policy = new PinPolicy.Builder()
+        .add("localhost", SUBDOMAIN)
+        .add("**.example.com", EXACT)
+        .build();
+
+    PinningTrustManager trustManager = new PinningTrustManager(TestFixtures.testKeyStore(), policy, 0);
+
+    try {
+      trustManager.checkServerTrusted(chain, "RSA");
+      fail("Accepted a chain without knowing its host!");
+    } catch (CertificateException e) {
+      // Expected.
+    }
+
+    trustManager.checkServerTrusted(chain, "RSA", "localhost");
+    trustManager.checkServerTrusted(chain, "RSA", "unpinned.example.net");
+
+    try {
+      trustManager.checkServerTrusted(chain, "RSA", "www.example.com");
+    } catch (CertificateException e) {
+      return;
+    }
+
+    fail("Accepted a chain without the host's pins!");
+  }
+
+  private static void assertPins(List<PinSet> found, PinSet... expected) {
+    assertEquals(expected.length, found.size());
+
+    for (PinSet pins : expected) {
+      assertTrue(found.contains(pins));
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+public class PinningSSLEngineFactoryTest extends AndroidTestCase {
+
+  private static final int  CONNECTIONS = 64;
+  private static final long TIMEOUT     = 30 * 1000;
+
+  private LoopbackTlsServer server;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = new LoopbackTlsServer();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+    super.tearDown();
+  }
+
+  public void testConcurrentHandshakes() throws Exception {
+    PinningSSLEngineFactory factory  = createFactory(TestFixtures.TEST_LEAF_PIN);
+    long                    start    = System.currentTimeMillis();
+    int                     verified = handshake(factory, "localhost", CONNECTIONS);
+
+    Log.w("PinningSSLEngineFactoryTest", CONNECTIONS + " handshakes on two threads took " +
+                                         (System.currentTimeMillis() - start) + "ms");
+
+    assertEquals(CONNECTIONS, verified);
+    assertEquals(CONNECTIONS, factory.getSessionStatistics().getHitCount() +
+                              factory.getSessionStatistics().getMissCount());
+  }
+
+  public void testHandshakesRecordOneCacheOutcome() throws Exception {
+    SystemKeyStore          keyStore = TestFixtures.testKeyStore();
+    AtomicValidationMetrics metrics  = new AtomicValidationMetrics();
+    PinPolicy               policy   = new PinPolicy.Builder()
+        .add("localhost", new PinSet(new String[] {TestFixtures.TEST_LEAF_PIN}))
+        .build();
+
+    PinningTrustManager trustManager = new PinningTrustManager(keyStore, policy, 0);
+    trustManager.setMetrics(metrics);
+
+    PinningSSLEngineFactory factory = new PinningSSLEngineFactory(trustManager);
+
+    assertEquals(8, handshake(factory, "localhost", 8));
+
+    long handshakes = factory.getSessionStatistics().getMissCount();
+
+    assertEquals(handshakes, metrics.getCacheHitCount() + metrics.getCacheMissCount());
+    assertEquals(handshakes, metrics.getLatency(ValidationMetrics.Phase.TOTAL).getCount());
+  }
+
+  public void testWrongPinsFailHandshake() throws Exception {
+    PinningSSLEngineFactory factory = createFactory(TestFixtures.UNRELATED_SHA1_PIN);
+
+    assertEquals(0, handshake(factory, "localhost", 4));
+  }
+
+  public void testGlobalPinsAreEnforcedWithoutVerification() throws Exception {
+    PinningSSLEngineFactory factory = createFactory(TestFixtures.UNRELATED_SHA1_PIN);
+
+    assertEquals(0, handshake(factory, "localhost", 4, false));
+  }
+
+  public void testEnginesNeedHost() throws Exception {
+    try {
+      createFactory(TestFixtures.TEST_LEAF_PIN).createSSLEngine(null, 443);
+      fail("Created an engine whose session can't be verified!");
+    } catch (IllegalArgumentException iae) {
+      // Expected.
+    }
+  }
+
+  public void testWrongHostFailsVerification() throws Exception {
+    PinningSSLEngineFactory factory = createFactory(TestFixtures.TEST_LEAF_PIN);
+
+    assertEquals(0, handshake(factory, "www.example.com", 4));
+  }
+
+  public void testPinUpdatesApplyToNewHandshakes() throws Exception {
+    PinningTrustManager     trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    PinningSSLEngineFactory factory      = new PinningSSLEngineFactory(trustManager);
+
+    assertEquals(1, handshake(factory, "localhost", 1));
+
+    // The chain is cached by now, but not for the new pins.
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.UNRELATED_SHA1_PIN}));
+    assertEquals(0, handshake(factory, "localhost", 1));
+
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.TEST_INTERMEDIATE_PIN}));
+    assertEquals(1, handshake(factory, "localhost", 1));
+  }
+
+  public void testPolicyFailsClosedInPlainContext() throws Exception {
+    SystemKeyStore      keyStore     = TestFixtures.testKeyStore();
+    PinPolicy           policy       = new PinPolicy.Builder()
+                                           .add("localhost", new String[] {TestFixtures.UNRELATED_SHA1_PIN})
+                                           .build();
+    PinningTrustManager trustManager = new PinningTrustManager(keyStore, policy, 0);
+    SSLContext          sslContext   = SSLContext.getInstance("TLS");
+
+    sslContext.init(null, new TrustManager[] {trustManager}, null);
+
+    SSLSocket socket = (SSLSocket)sslContext.getSocketFactory().createSocket("127.0.0.1", server.getPort());
+
+    try {
+      socket.startHandshake();
+      fail("Accepted an unpinned chain without knowing the host!");
+    } catch (SSLException se) {
+      // Expected.
+    } finally {
+      socket.close();
+    }
+
+    try {
+      new PinningSSLEngineFactory(trustManager).getSSLContext();
+      fail("Handed out a context that can't enforce the policy!");
+    } catch (IllegalStateException ise) {
+      // Expected.
+    }
+  }
+
+  public void testPinUpdatesInvalidatePlainContextSessions() throws Exception {
+    PinningTrustManager trustManager = TestFixtures.trustManager(TestFixtures.TEST_LEAF_PIN);
+    SSLContext          sslContext   = new PinningSSLEngineFactory(trustManager).getSSLContext();
+    SSLSession          first        = handshake(sslContext);
+
+    // Resumed without asking the trust manager.
+    assertTrue(Arrays.equals(first.getId(), handshake(sslContext).getId()));
+
+    trustManager.updatePins(new PinSet(new String[] {TestFixtures.UNRELATED_SHA1_PIN}));
+
+    try {
+      handshake(sslContext);
+      fail("Resumed a session accepted under the old pins!");
+    } catch (SSLException se) {
+      // Expected.
+    }
+  }
+
+  private SSLSession handshake(SSLContext sslContext) throws IOException {
+    SSLSocket socket = (SSLSocket)sslContext.getSocketFactory().createSocket("127.0.0.1", server.getPort());
+
+    try {
+      // TLS 1.2 resumes within the handshake, without waiting for a ticket.
+      socket.setEnabledProtocols(new String[] {"TLSv1.2"});
+      socket.startHandshake();
+
+      return socket.getSession();
+    } finally {
+      socket.close();
+    }
+  }
+
+  private PinningSSLEngineFactory createFactory(String pin) throws Exception {
+    return new PinningSSLEngineFactory(TestFixtures.trustManager(pin));
+  }
+
+  /**
+   * Opens connections to the loopback server and drives all of their handshakes
+   * from one selector on this thread.
+   *
+   * @return The number of connections whose sessions passed verification.
+   */
+  private int handshake(PinningSSLEngineFactory factory, String host, int connections) throws Exception {
+    return handshake(factory, host, connections, true);
+  }
+
+  /**
+   * @param verify Whether to verify each session once its handshake completes.
+   * @return The number of connections that completed their handshakes, and
+   *         passed verification if it was asked for.
+   */
+  private int handshake(PinningSSLEngineFactory factory, String host, int connections, boolean verify)
+      throws Exception
+  {
+    Selector selector = Selector.open();
+    int      verified = 0;
+    int      finished = 0;
+
+    try {
+      for (int i = 0; i < connections; i++) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+        channel.register(selector, SelectionKey.OP_CONNECT,
+                         new NonBlockingHandshake(channel, factory.createSSLEngine(host, server.getPort())));
+      }
+
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+
+      while (finished < connections) {
+        assertTrue("Handshakes timed out!", System.currentTimeMillis() < deadline);
+        selector.select(1000);
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+          SelectionKey         key       = keys.next();
+          NonBlockingHandshake handshake = (NonBlockingHandshake)key.attachment();
+
+          keys.remove();
+
+          try {
+            if (key.isConnectable() && !handshake.getChannel().finishConnect()) {
+              continue;
+            }
+
+            if (!handshake.advance()) {
+              key.interestOps(handshake.getInterestOps());
+              continue;
+            }
+
+            if (verify) {
+              factory.verifySession(handshake.getEngine());
+            }
+
+            verified++;
+          } catch (IOException ioe) {
+            // A rejected certificate or host, which the caller counts.
+          }
+
+          finished++;
+          key.cancel();
+          handshake.getChannel().close();
+        }
+      }
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+
+      selector.close();
+    }
+
+    return verified;
+  }
+}
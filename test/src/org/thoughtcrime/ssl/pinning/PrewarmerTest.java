@@ -0,0 +1,69 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PrewarmerTest extends AndroidTestCase {
+
+  public void testConcurrencyIsLimited() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger peak    = new AtomicInteger();
+
+    List<String> hosts = Arrays.asList("a.example", "b.example", "c.example", "d.example",
+                                       "e.example", "f.example", "g.example", "h.example");
+
+    List<PrewarmResult> results = new Prewarmer() {
+      @Override
+      protected void warm(String host) {
+        int now = running.incrementAndGet();
+
+        while (true) {
+          int previous = peak.get();
+
+          if (now <= previous || peak.compareAndSet(previous, now)) {
+            break;
+          }
+        }
+
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException ie) {
+          throw new AssertionError(ie);
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+    }.start(hosts, 3).get(30, TimeUnit.SECONDS);
+
+    assertEquals(3, peak.get());
+    assertEquals(hosts.size(), results.size());
+
+    for (int i = 0; i < hosts.size(); i++) {
+      assertEquals(hosts.get(i), results.get(i).getHost());
+      assertTrue(results.get(i).isWarm());
+      assertTrue(results.get(i).getElapsedMillis() >= 40);
+    }
+  }
+
+  public void testFailuresAreReported() throws Exception {
+    List<PrewarmResult> results = new Prewarmer() {
+      @Override
+      protected void warm(String host) throws IOException {
+        if (host.startsWith("bad")) {
+          throw new UnknownHostException(host);
+        }
+      }
+    }.start(Arrays.asList("good.example", "bad.example"), 4).get(30, TimeUnit.SECONDS);
+
+    assertTrue(results.get(0).isWarm());
+    assertNull(results.get(0).getFailure());
+    assertFalse(results.get(1).isWarm());
+    assertTrue(results.get(1).getFailure() instanceof UnknownHostException);
+  }
+}
@@ -0,0 +1,70 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SpkiHasherTest extends AndroidTestCase {
+
+  public void testLocatesSubjectPublicKeyInfo() throws Exception {
+    String[] pems = {TestCertificates.GOOGLE_WILDCARD, TestCertificates.GOOGLE_AUTHORITY,
+                     TestCertificates.EQUIFAX_ROOT, TestCertificates.VERISIGN_CLASS_3_EV,
+                     TestCertificates.VERISIGN_CLASS_THREE, TestCertificates.VERISIGN_ROOT};
+
+    for (String pem : pems) {
+      X509Certificate certificate = TestCertificates.parse(pem);
+      byte[]          encoded     = certificate.getEncoded();
+      long            range       = SpkiHasher.locateSubjectPublicKeyInfo(encoded);
+      int             offset      = (int) (range >>> 32);
+      int             length      = (int) range;
+
+      assertTrue(range != -1);
+      assertTrue(Arrays.equals(certificate.getPublicKey().getEncoded(),
+                               Arrays.copyOfRange(encoded, offset, offset + length)));
+    }
+  }
+
+  public void testSha1MatchesPublicKeyDigest() throws Exception {
+    X509Certificate certificate = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    byte[]          expected    = MessageDigest.getInstance("SHA1").digest(certificate.getPublicKey().getEncoded());
+
+    assertTrue(Arrays.equals(expected, SpkiHasher.getInstance().sha1(certificate)));
+    assertTrue(Arrays.equals(expected, SpkiHasher.getInstance().sha1(certificate)));
+  }
+
+  public void testOnlyPinnedAlgorithmsMatch() throws Exception {
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    PinSet          pins            = new PinSet(new String[] {TestFixtures.UNRELATED_PIN,
+                                                               "48e668f92bd2b295d747d82320104f3398909fd4"});
+
+    assertTrue(SpkiHasher.getInstance().isPinned(googleAuthority, pins));
+    assertTrue(SpkiHasher.getInstance().isPinned(equifaxRoot, pins));
+    assertFalse(SpkiHasher.getInstance().isPinned(TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD), pins));
+  }
+
+  public void testMatchesAnyOfSeveralPinSets() throws Exception {
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    List<PinSet>    pinSets         = Arrays.asList(new PinSet(new String[] {TestFixtures.UNRELATED_PIN}),
+                                                    new PinSet(new String[] {"48e668f92bd2b295d747d82320104f3398909fd4"}));
+
+    assertTrue(SpkiHasher.getInstance().isPinned(googleAuthority, pinSets));
+    assertTrue(SpkiHasher.getInstance().isPinned(equifaxRoot, pinSets));
+    assertFalse(SpkiHasher.getInstance().isPinned(TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD), pinSets));
+    assertFalse(SpkiHasher.getInstance().isPinned(googleAuthority, new ArrayList<PinSet>()));
+  }
+
+  public void testRejectsTruncatedEncoding() throws Exception {
+    byte[] encoded = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY).getEncoded();
+
+    assertEquals(-1, SpkiHasher.locateSubjectPublicKeyInfo(Arrays.copyOf(encoded, 64)));
+    assertEquals(-1, SpkiHasher.locateSubjectPublicKeyInfo(new byte[0]));
+  }
+}
@@ -0,0 +1,43 @@
+package org.thoughtcrime.ssl.pinning;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * The test chain, key stores that trust it, and pins that do and don't
+ * match it.
+ */
+final class TestFixtures {
+
+  static final String TEST_INTERMEDIATE_PIN = "sha256/+4N2axkPOUmtv4Kk0IegFKYDN4IhSimQAY/KvhpQlGk=";
+  static final String TEST_LEAF_PIN         = "sha256/Otgdu3wEJR/raTE3N0RO7hI00AucAKx6Iaaw43n/hCY=";
+  static final String UNRELATED_PIN         = "sha256/trlUMquuV/4CDLK3T0+fkXPIxwivyecyrOIyeQR8bQU=";
+  static final String UNRELATED_SHA1_PIN    = "40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd";
+
+  private TestFixtures() {}
+
+  /**
+   * @return TEST_LEAF and TEST_INTERMEDIATE, the chain a server presents.
+   */
+  static X509Certificate[] chain() throws CertificateException {
+    return new X509Certificate[] {TestCertificates.parse(TestCertificates.TEST_LEAF),
+                                  TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE)};
+  }
+
+  static SystemKeyStore keyStore(X509Certificate... anchors) throws Exception {
+    return new SystemKeyStore(TrustAnchorIndexTest.compile(anchors));
+  }
+
+  /**
+   * @return A key store that trusts TEST_ROOT and nothing else.
+   */
+  static SystemKeyStore testKeyStore() throws Exception {
+    return keyStore(TestCertificates.parse(TestCertificates.TEST_ROOT));
+  }
+
+  static PinningTrustManager trustManager(String... pins) throws Exception {
+    return new PinningTrustManager(testKeyStore(), pins, 0);
+  }
+}
@@ -0,0 +1,128 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+public class TrustAnchorIndexTest extends AndroidTestCase {
+
+  public void testRoundTrip() throws Exception {
+    X509Certificate equifaxRoot  = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    X509Certificate verisignRoot = TestCertificates.parse(TestCertificates.VERISIGN_ROOT);
+    TrustAnchorIndex index       = compile(equifaxRoot, verisignRoot);
+
+    assertEquals(2, index.size());
+
+    long subjectHash = TrustAnchorIndex.subjectHash(equifaxRoot.getSubjectX500Principal());
+    int  position    = index.firstIndexOf(subjectHash);
+
+    assertTrue(position != -1);
+    assertTrue(index.hasSpkiHash(position, SpkiHasher.getInstance().sha256(equifaxRoot)));
+    assertFalse(index.hasSpkiHash(position, SpkiHasher.getInstance().sha256(verisignRoot)));
+    assertEquals(equifaxRoot, index.getCertificate(position));
+    assertSame(index.getCertificate(position), index.getCertificate(position));
+
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    assertEquals(-1, index.firstIndexOf(TrustAnchorIndex.subjectHash(googleAuthority.getSubjectX500Principal())));
+  }
+
+  public void testSystemKeyStoreLookups() throws Exception {
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    SystemKeyStore  keyStore        = new SystemKeyStore(compile(equifaxRoot));
+
+    assertTrue(keyStore.isTrustRoot(equifaxRoot));
+    assertFalse(keyStore.isTrustRoot(googleAuthority));
+    assertEquals(equifaxRoot, keyStore.getTrustRootFor(googleAuthority));
+    assertNull(keyStore.getTrustRootFor(equifaxRoot));
+  }
+
+  public void testKeyIdentifierLookups() throws Exception {
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    X509Certificate verisignRoot    = TestCertificates.parse(TestCertificates.VERISIGN_ROOT);
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    TrustAnchorIndex index          = compile(verisignRoot, equifaxRoot);
+
+    byte[] authorityKeyIdentifier = KeyIdentifiers.getAuthorityKeyIdentifier(googleAuthority);
+
+    assertTrue(Arrays.equals(KeyIdentifiers.getSubjectKeyIdentifier(equifaxRoot), authorityKeyIdentifier));
+    assertNull(KeyIdentifiers.getSubjectKeyIdentifier(verisignRoot));
+
+    int[] positions = index.findByKeyIdentifier(authorityKeyIdentifier);
+
+    assertEquals(1, positions.length);
+    assertEquals(equifaxRoot, index.getCertificate(positions[0]));
+    assertEquals(0, index.findByKeyIdentifier(KeyIdentifiers.getSubjectKeyIdentifier(googleAuthority)).length);
+  }
+
+  public void testRejectsGarbage() {
+    try {
+      new TrustAnchorIndex(ByteBuffer.wrap(new byte[] {'B', 'K', 'S', 0, 0, 0, 0, 1, 0, 0, 0, 0}));
+    } catch (IOException ioe) {
+      return;
+    }
+
+    fail("Accepted something that isn't an index!");
+  }
+
+  public void testRejectsCorruptCount() throws Exception {
+    byte[] encoded = encode(TestCertificates.parse(TestCertificates.TEST_ROOT));
+
+    for (int count : new int[] {-1, Integer.MAX_VALUE}) {
+      ByteBuffer.wrap(encoded).putInt(8, count);
+
+      try {
+        new TrustAnchorIndex(ByteBuffer.wrap(encoded));
+        fail("Accepted a count of " + count + "!");
+      } catch (IOException ioe) {
+        // Expected.
+      }
+    }
+  }
+
+  public void testRejectsEntriesOutsideIndex() throws Exception {
+    byte[] encoded = encode(TestCertificates.parse(TestCertificates.TEST_ROOT));
+
+    // The DER offset and length of the only entry.
+    int[][] corruptions = {{60, -1}, {60, 0}, {60, encoded.length}, {64, -1}, {64, 0}, {64, encoded.length}};
+
+    for (int[] corruption : corruptions) {
+      byte[] corrupt = encoded.clone();
+      ByteBuffer.wrap(corrupt).putInt(corruption[0], corruption[1]);
+
+      try {
+        new TrustAnchorIndex(ByteBuffer.wrap(corrupt));
+        fail("Accepted " + corruption[1] + " at " + corruption[0] + "!");
+      } catch (IOException ioe) {
+        // Expected.
+      }
+    }
+
+    // A second entry that's really the first certificate's DER.
+    ByteBuffer.wrap(encoded).putInt(8, 2);
+
+    try {
+      new TrustAnchorIndex(ByteBuffer.wrap(encoded));
+      fail("Accepted an entry read from certificate data!");
+    } catch (IOException ioe) {
+      // Expected.
+    }
+  }
+
+  static TrustAnchorIndex compile(X509Certificate... anchors) throws Exception {
+    return new TrustAnchorIndex(ByteBuffer.wrap(encode(anchors)));
+  }
+
+  private static byte[] encode(X509Certificate... anchors) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TrustAnchorIndex.write(Arrays.asList(anchors), out);
+
+    return out.toByteArray();
+  }
+}
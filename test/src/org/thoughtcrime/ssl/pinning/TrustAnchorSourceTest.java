@@ -0,0 +1,107 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class TrustAnchorSourceTest extends AndroidTestCase {
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    directory = File.createTempFile("anchors", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+    super.tearDown();
+  }
+
+  public void testPemDirectory() throws Exception {
+    X509Certificate root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    X509Certificate equifaxRoot  = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+
+    write("roots.pem", TestCertificates.TEST_ROOT + TestCertificates.EQUIFAX_ROOT);
+    write(".hidden", "Not a certificate.");
+
+    TrustAnchorSource source = new PemDirectoryTrustAnchorSource(directory);
+    TrustAnchorStore  store  = new TrustAnchorStore(source);
+
+    assertEquals(2, source.getCertificates().size());
+    assertTrue(store.isTrustRoot(root));
+    assertTrue(store.isTrustRoot(equifaxRoot));
+    assertFalse(store.isTrustRoot(intermediate));
+    assertEquals(root, store.getTrustRootFor(intermediate));
+  }
+
+  public void testPemDirectoryRejectsGarbage() throws Exception {
+    write("root.pem", TestCertificates.TEST_ROOT);
+    write("garbage.pem", "Not a certificate.");
+
+    try {
+      new TrustAnchorStore(new PemDirectoryTrustAnchorSource(directory));
+      fail("Accepted a file that isn't a certificate!");
+    } catch (CertificateException ce) {
+      assertTrue(ce.getMessage().contains("garbage.pem"));
+    }
+  }
+
+  public void testKeyStoreFile() throws Exception {
+    X509Certificate root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    KeyStore        keyStore     = KeyStore.getInstance(KeyStore.getDefaultType());
+    File            file         = new File(directory, "anchors.keystore");
+    char[]          password     = "changeit".toCharArray();
+
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("root", root);
+
+    FileOutputStream out = new FileOutputStream(file);
+    keyStore.store(out, password);
+    out.close();
+
+    TrustAnchorStore store = new TrustAnchorStore(new KeyStoreTrustAnchorSource(file, KeyStore.getDefaultType(), password));
+
+    assertTrue(store.isTrustRoot(root));
+    assertEquals(root, store.getTrustRootFor(intermediate));
+  }
+
+  public void testPinsAgainstPemDirectory() throws Exception {
+    X509Certificate[] chain = new X509Certificate[] {TestCertificates.parse(TestCertificates.TEST_LEAF),
+                                                     TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE)};
+
+    write("root.pem", TestCertificates.TEST_ROOT);
+
+    TrustAnchorStore    store        = new TrustAnchorStore(new PemDirectoryTrustAnchorSource(directory));
+    PinningTrustManager trustManager = new PinningTrustManager(store, new String[] {TestFixtures.TEST_LEAF_PIN}, 0);
+
+    for (ValidationMode mode : ValidationMode.values()) {
+      trustManager.setValidationMode(mode);
+      trustManager.clearCache();
+      trustManager.checkServerTrusted(chain, "RSA");
+    }
+  }
+
+  private void write(String name, String contents) throws IOException {
+    FileOutputStream out = new FileOutputStream(new File(directory, name));
+    out.write(contents.getBytes("UTF-8"));
+    out.close();
+  }
+}
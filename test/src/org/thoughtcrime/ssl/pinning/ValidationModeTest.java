@@ -0,0 +1,122 @@
+package org.thoughtcrime.ssl.pinning;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.test.TestCertificates;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+public class ValidationModeTest extends AndroidTestCase {
+
+  public void testModesAgreeOnValidChains() throws Exception {
+    X509Certificate root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    X509Certificate leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    SystemKeyStore  keyStore     = TestFixtures.keyStore(root);
+
+    for (ValidationMode mode : ValidationMode.values()) {
+      assertTrusted(keyStore, mode, TestFixtures.TEST_INTERMEDIATE_PIN, leaf, intermediate);
+      assertTrusted(keyStore, mode, TestFixtures.TEST_LEAF_PIN, leaf, intermediate, root);
+    }
+  }
+
+  public void testModesAgreeOnInvalidChains() throws Exception {
+    X509Certificate root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    X509Certificate leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    X509Certificate equifaxRoot  = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    SystemKeyStore  keyStore     = TestFixtures.keyStore(root);
+    SystemKeyStore  otherStore   = TestFixtures.keyStore(equifaxRoot);
+
+    for (ValidationMode mode : ValidationMode.values()) {
+      // Unpinned, unanchored, and a trust anchor that doesn't sign anything.
+      assertUntrusted(keyStore, mode, TestFixtures.UNRELATED_PIN, leaf, intermediate);
+      assertUntrusted(otherStore, mode, TestFixtures.TEST_LEAF_PIN, leaf, intermediate);
+      assertUntrusted(keyStore, mode, TestFixtures.TEST_LEAF_PIN, leaf, root);
+    }
+  }
+
+  public void testSinglePassRejectsExpiredChains() throws Exception {
+    X509Certificate googleWildcard  = TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD);
+    X509Certificate googleAuthority = TestCertificates.parse(TestCertificates.GOOGLE_AUTHORITY);
+    X509Certificate equifaxRoot     = TestCertificates.parse(TestCertificates.EQUIFAX_ROOT);
+    SystemKeyStore  keyStore        = TestFixtures.keyStore(equifaxRoot);
+
+    assertUntrusted(keyStore, ValidationMode.SINGLE_PASS, TestFixtures.UNRELATED_SHA1_PIN,
+                    googleWildcard, googleAuthority);
+  }
+
+  public void testModesAgreeOnKeyUsage() throws Exception {
+    X509Certificate root         = TestCertificates.parse(TestCertificates.TEST_ROOT);
+    X509Certificate intermediate = TestCertificates.parse(TestCertificates.TEST_INTERMEDIATE);
+    X509Certificate leaf         = TestCertificates.parse(TestCertificates.TEST_LEAF);
+    SystemKeyStore  keyStore     = TestFixtures.keyStore(root);
+
+    for (ValidationMode mode : ValidationMode.values()) {
+      assertTrusted(keyStore, mode, "ECDHE_RSA", TestFixtures.TEST_LEAF_PIN, leaf, intermediate);
+
+      // A CA certificate can only sign certificates, not key exchanges.
+      assertUntrusted(keyStore, mode, "RSA", TestFixtures.TEST_INTERMEDIATE_PIN, intermediate);
+      assertUntrusted(keyStore, mode, "ECDHE_RSA", TestFixtures.TEST_INTERMEDIATE_PIN, intermediate);
+    }
+  }
+
+  public void testSinglePassRejectsExpiredAnchorAsLeaf() throws Exception {
+    X509Certificate googleWildcard = TestCertificates.parse(TestCertificates.GOOGLE_WILDCARD);
+    SystemKeyStore  keyStore       = TestFixtures.keyStore(googleWildcard);
+
+    assertUntrusted(keyStore, ValidationMode.SINGLE_PASS, "ECDHE_ECDSA",
+                    "f51b076e3846400e674cbafeb4fcd28aea0ccf86", googleWildcard);
+  }
+
+  public void testSinglePassRejectsSha1Signatures() throws Exception {
+    X509Certificate root     = TestCertificates.parse(TestCertificates.TEST_SHA1_ROOT);
+    X509Certificate leaf     = TestCertificates.parse(TestCertificates.TEST_SHA1_LEAF);
+    SystemKeyStore  keyStore = TestFixtures.keyStore(root);
+
+    assertUntrusted(keyStore, ValidationMode.SINGLE_PASS, "sha256/kTCLV91R0CBRcUnhg4Vw5xwq7Os/nm14Wugs6NgKvmg=",
+                    leaf);
+  }
+
+  private static void assertTrusted(SystemKeyStore keyStore, ValidationMode mode,
+                                    String pin, X509Certificate... chain)
+      throws CertificateException
+  {
+    assertTrusted(keyStore, mode, "RSA", pin, chain);
+  }
+
+  private static void assertTrusted(SystemKeyStore keyStore, ValidationMode mode, String authType,
+                                    String pin, X509Certificate... chain)
+      throws CertificateException
+  {
+    createTrustManager(keyStore, mode, pin).checkServerTrusted(chain, authType);
+  }
+
+  private static void assertUntrusted(SystemKeyStore keyStore, ValidationMode mode,
+                                      String pin, X509Certificate... chain)
+  {
+    assertUntrusted(keyStore, mode, "RSA", pin, chain);
+  }
+
+  private static void assertUntrusted(SystemKeyStore keyStore, ValidationMode mode, String authType,
+                                      String pin, X509Certificate... chain)
+  {
+    try {
+      createTrustManager(keyStore, mode, pin).checkServerTrusted(chain, authType);
+    } catch (CertificateException e) {
+      return;
+    }
+
+    fail(mode + " accepted an invalid chain!");
+  }
+
+  private static PinningTrustManager createTrustManager(SystemKeyStore keyStore, ValidationMode mode,
+                                                        String pin)
+  {
+    PinningTrustManager trustManager = new PinningTrustManager(keyStore, new String[] {pin}, 0);
+    trustManager.setValidationMode(mode);
+
+    return trustManager;
+  }
+}
@@ -0,0 +1,93 @@
+package org.thoughtcrime.ssl.pinning.test;
+
+import android.test.AndroidTestCase;
+
+import org.thoughtcrime.ssl.pinning.PinSet;
+
+public class PinSetTest extends AndroidTestCase {
+
+  private static final String GOOGLE_AUTHORITY_PIN = "40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd";
+  private static final String OTHER_PIN            = "f30012bbc18c231ac1a44b788e410ce754182513";
+
+  public void testContains() {
+    PinSet pins = new PinSet(new String[] {GOOGLE_AUTHORITY_PIN, OTHER_PIN});
+
+    assertEquals(2, pins.size());
+    assertTrue(pins.contains(hexToBytes(GOOGLE_AUTHORITY_PIN)));
+    assertTrue(pins.contains(hexToBytes(OTHER_PIN)));
+    assertFalse(pins.contains(hexToBytes("0000000000000000000000000000000000000000")));
+    assertFalse(pins.contains(new byte[4]));
+  }
+
+  public void testManyPins() {
+    String[] encoded = new String[100];
+
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = String.format("%040x", i * 7919L);
+    }
+
+    PinSet pins = new PinSet(encoded);
+
+    for (String pin : encoded) {
+      assertTrue(pins.contains(hexToBytes(pin)));
+    }
+
+    assertFalse(pins.contains(hexToBytes(String.format("%040x", 3L))));
+  }
+
+  public void testDuplicatesAndEquality() {
+    PinSet pins     = new PinSet(new String[] {GOOGLE_AUTHORITY_PIN, OTHER_PIN, GOOGLE_AUTHORITY_PIN});
+    PinSet reversed = new PinSet(new String[] {OTHER_PIN, GOOGLE_AUTHORITY_PIN});
+
+    assertEquals(2, pins.size());
+    assertEquals(pins, reversed);
+    assertEquals(pins.hashCode(), reversed.hashCode());
+    assertFalse(pins.equals(new PinSet(new String[] {OTHER_PIN})));
+  }
+
+  public void testMixedAlgorithmsAndEncodings() {
+    PinSet pins = new PinSet(new String[] {
+        "sha1/QMVAHW+MuvCLAO3vse6H0AWzuc0=",
+        "sha256/trlUMquuV/4CDLK3T0+fkXPIxwivyecyrOIyeQR8bQU=",
+        "ff5680cd73a5703da04817a075fd462506a73506c4b81a1583ef549478d26476"
+    });
+
+    assertEquals(3, pins.size());
+    assertTrue(pins.contains(hexToBytes(GOOGLE_AUTHORITY_PIN)));
+    assertTrue(pins.contains(hexToBytes("b6b95432abae57fe020cb2b74f4f9f9173c8c708afc9e732ace23279047c6d05")));
+    assertTrue(pins.contains(hexToBytes("ff5680cd73a5703da04817a075fd462506a73506c4b81a1583ef549478d26476")));
+    assertFalse(pins.contains(hexToBytes(OTHER_PIN)));
+    assertEquals(new PinSet(new String[] {"sha1/QMVAHW+MuvCLAO3vse6H0AWzuc0="}),
+                 new PinSet(new String[] {GOOGLE_AUTHORITY_PIN}));
+  }
+
+  public void testMalformedBase64Pin() {
+    try {
+      new PinSet(new String[] {"sha256/QMVAHW+MuvCLAO3vse6H0AWzuc0="});
+    } catch (IllegalArgumentException iae) {
+      return;
+    }
+
+    fail("Accepted a SHA-1 digest as a SHA-256 pin!");
+  }
+
+  public void testMalformedPin() {
+    try {
+      new PinSet(new String[] {"40c5401d6f8cbaf0"});
+    } catch (IllegalArgumentException iae) {
+      return;
+    }
+
+    fail("Accepted a truncated pin!");
+  }
+
+  static byte[] hexToBytes(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+    }
+
+    return bytes;
+  }
+}
@@ -3,13 +3,25 @@ package org.thoughtcrime.ssl.pinning.test;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import org.apache.http.HttpHost;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.thoughtcrime.ssl.pinning.PrewarmResult;
+import org.thoughtcrime.ssl.pinning.util.PinnedHttpClientBuilder;
 import org.thoughtcrime.ssl.pinning.util.PinningHelper;
 
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class PinningHelperTest extends AndroidTestCase {
 
@@ -52,5 +64,96 @@ public class PinningHelperTest extends AndroidTestCase {
     fail("Accepted bad pin!");
   }
 
+  public void testClientsShareSocketFactory() {
+    HttpClient first  = PinningHelper.getPinnedHttpClient(getContext(), new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd",
+                                                                                      "48e668f92bd2b295d747d82320104f3398909fd4"});
+    HttpClient second = PinningHelper.getPinnedHttpClient(getContext(), new String[] {"48e668f92bd2b295d747d82320104f3398909fd4",
+                                                                                      "40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"});
+    HttpClient other  = PinningHelper.getPinnedHttpClient(getContext(), new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"});
 
+    assertSame(getSocketFactory(first), getSocketFactory(second));
+    assertNotSame(getSocketFactory(first), getSocketFactory(other));
+  }
+
+  public void testOldSocketFactoriesAreDropped() {
+    String[]   pins   = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    HttpClient first  = PinningHelper.getPinnedHttpClient(getContext(), pins);
+
+    assertSame(getSocketFactory(first), getSocketFactory(PinningHelper.getPinnedHttpClient(getContext(), pins)));
+
+    // Rotate through enough other pin sets to push the first one out.
+    for (int i = 0; i < 16; i++) {
+      PinningHelper.getPinnedHttpClient(getContext(), new String[] {String.format("%040x", i)});
+    }
+
+    assertNotSame(getSocketFactory(first), getSocketFactory(PinningHelper.getPinnedHttpClient(getContext(), pins)));
+  }
+
+  public void testBuilderConfiguresPool() {
+    String[] pins     = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    HttpClient client = new PinnedHttpClientBuilder(getContext(), pins)
+        .setMaxTotalConnections(16)
+        .setMaxConnectionsPerRoute(8)
+        .setConnectionTimeoutMillis(15 * 1000)
+        .setSocketTimeoutMillis(30 * 1000)
+        .setKeepAliveMillis(30 * 1000)
+        .setIdleConnectionTimeoutMillis(60 * 1000)
+        .build();
+
+    HttpParams params = client.getParams();
+
+    assertEquals(16, ConnManagerParams.getMaxTotalConnections(params));
+    assertEquals(8, ConnManagerParams.getMaxConnectionsPerRoute(params).getMaxForRoute(new HttpRoute(new HttpHost("www.google.com", 443, "https"))));
+    assertEquals(15 * 1000, HttpConnectionParams.getConnectionTimeout(params));
+    assertEquals(30 * 1000, HttpConnectionParams.getSoTimeout(params));
+    assertSame(getSocketFactory(client), getSocketFactory(PinningHelper.getPinnedHttpClient(getContext(), pins)));
+
+    client.getConnectionManager().shutdown();
+  }
+
+  public void testShutdownStopsIdleConnectionEvictor() throws Exception {
+    String[] pins     = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    int      evictors = countIdleConnectionEvictors();
+
+    HttpClient client = new PinnedHttpClientBuilder(getContext(), pins)
+        .setIdleConnectionTimeoutMillis(60 * 1000)
+        .build();
+
+    assertEquals(evictors + 1, countIdleConnectionEvictors());
+    client.getConnectionManager().shutdown();
+
+    long deadline = System.currentTimeMillis() + 10 * 1000;
+
+    while (countIdleConnectionEvictors() != evictors) {
+      assertTrue("Evictor outlived its pool!", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  public void testPrewarmParksConnections() throws Exception {
+    String[] pins     = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    HttpClient client = PinningHelper.getPinnedHttpClient(getContext(), pins);
+
+    List<PrewarmResult> results = PinningHelper.prewarm(client, Arrays.asList("www.google.com"), 4)
+                                               .get(60, TimeUnit.SECONDS);
+
+    assertTrue(results.get(0).isWarm());
+    assertEquals(1, ((ThreadSafeClientConnManager) client.getConnectionManager()).getConnectionsInPool());
+  }
+
+  private static int countIdleConnectionEvictors() {
+    int count = 0;
+
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("IdleConnectionEvictor") && thread.isAlive()) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  private static SocketFactory getSocketFactory(HttpClient client) {
+    return client.getConnectionManager().getSchemeRegistry().getScheme("https").getSocketFactory();
+  }
 }
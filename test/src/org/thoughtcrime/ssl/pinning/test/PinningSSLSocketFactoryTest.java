@@ -13,13 +13,19 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
+import org.thoughtcrime.ssl.pinning.CacheStatistics;
 import org.thoughtcrime.ssl.pinning.PinningSSLSocketFactory;
+import org.thoughtcrime.ssl.pinning.PrewarmResult;
 
 import java.io.IOException;
+import java.net.Socket;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class PinningSSLSocketFactoryTest extends AndroidTestCase {
 
@@ -56,5 +62,40 @@ public class PinningSSLSocketFactoryTest extends AndroidTestCase {
     fail("No errot thrown when connecting to unpinned host!");
   }
 
+  public void testSessionResumption() throws IOException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+    String[] pins                   = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    PinningSSLSocketFactory factory = new PinningSSLSocketFactory(getContext(), pins, 0);
+    HttpParams httpParams           = new BasicHttpParams();
 
+    factory.setSessionCacheSize(8);
+    factory.setSessionTimeout(60);
+
+    for (int i = 0; i < 2; i++) {
+      Socket socket = factory.connectSocket(null, "www.google.com", 443, null, 0, httpParams);
+      socket.close();
+    }
+
+    CacheStatistics statistics = factory.getSessionStatistics();
+
+    assertEquals(1, statistics.getMissCount());
+    assertEquals(1, statistics.getHitCount());
+    assertEquals(8, statistics.getCapacity());
+  }
+
+  public void testPrewarm() throws Exception {
+    String[] pins                   = new String[] {"40c5401d6f8cbaf08b00edefb1ee87d005b3b9cd"};
+    PinningSSLSocketFactory factory = new PinningSSLSocketFactory(getContext(), pins, 0);
+
+    List<PrewarmResult> results = factory.prewarm(Arrays.asList("www.google.com", "www.twitter.com"), 2)
+                                         .get(60, TimeUnit.SECONDS);
+
+    assertTrue(results.get(0).isWarm());
+    assertFalse(results.get(1).isWarm());
+
+    // The warmed up session is resumed.
+    Socket socket = factory.connectSocket(null, "www.google.com", 443, null, 0, new BasicHttpParams());
+    socket.close();
+
+    assertEquals(1, factory.getSessionStatistics().getHitCount());
+  }
 }
@@ -5,10 +5,20 @@ import android.test.AndroidTestCase;
 
 import org.thoughtcrime.ssl.pinning.SystemKeyStore;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 public class SystemKeyStoreTest extends AndroidTestCase {
 
   public void testConstruction() {
     assertNotNull(SystemKeyStore.getInstance(getContext()));
   }
 
+  public void testPreload() throws InterruptedException, ExecutionException {
+    Future<SystemKeyStore> preloaded = SystemKeyStore.preload(getContext());
+
+    assertSame(preloaded.get(), SystemKeyStore.getInstance(getContext()));
+    assertTrue(preloaded.get().getLoadTimeMillis() >= 0);
+  }
+
 }
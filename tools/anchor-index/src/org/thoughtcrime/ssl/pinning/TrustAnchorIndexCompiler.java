@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2026 The AndroidPinning Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.thoughtcrime.ssl.pinning;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Compiles the bundled BKS truststore into the {@link TrustAnchorIndex}
+ * format that SystemKeyStore maps at runtime, and checks that every anchor
+ * in the truststore can be found in the index it wrote.
+ *
+ * Usage: TrustAnchorIndexCompiler &lt;cacerts.bks&gt; &lt;cacerts_index.idx&gt;
+ */
+public class TrustAnchorIndexCompiler {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Usage: TrustAnchorIndexCompiler <cacerts.bks> <cacerts_index.idx>");
+      System.exit(1);
+    }
+
+    Security.addProvider(new BouncyCastleProvider());
+
+    final KeyStore    trustStore = KeyStore.getInstance("BKS");
+    final InputStream in         = new BufferedInputStream(new FileInputStream(args[0]));
+
+    try {
+      trustStore.load(in, "changeit".toCharArray());
+    } finally {
+      in.close();
+    }
+
+    final List<X509Certificate> anchors = new LinkedList<X509Certificate>();
+
+    for (Enumeration<String> aliases = trustStore.aliases(); aliases.hasMoreElements(); ) {
+      final X509Certificate anchor = (X509Certificate) trustStore.getCertificate(aliases.nextElement());
+
+      if (anchor != null) {
+        anchors.add(anchor);
+      }
+    }
+
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+
+    try {
+      TrustAnchorIndex.write(anchors, out);
+    } finally {
+      out.close();
+    }
+
+    verify(anchors, args[1]);
+    System.out.println("Compiled " + anchors.size() + " trust anchors into " + args[1]);
+  }
+
+  private static void verify(List<X509Certificate> anchors, String indexFile) throws Exception {
+    final RandomAccessFile file  = new RandomAccessFile(indexFile, "r");
+    final byte[]           bytes = new byte[(int) file.length()];
+
+    try {
+      file.readFully(bytes);
+    } finally {
+      file.close();
+    }
+
+    final TrustAnchorIndex index = new TrustAnchorIndex(ByteBuffer.wrap(bytes));
+
+    for (X509Certificate anchor : anchors) {
+      if (!index.contains(TrustAnchorIndex.subjectHash(anchor.getSubjectX500Principal()),
+                          SpkiHasher.getInstance().sha256(anchor)))
+      {
+        throw new IOException("Index is missing " + anchor.getSubjectX500Principal());
+      }
+    }
+  }
+}
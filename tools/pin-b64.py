@@ -25,25 +25,20 @@ If you need this to be something other than GPL, send me an email.
 """
 
 from M2Crypto import X509
-import sys, binascii, hashlib
+import sys, base64, hashlib
 
 def main(argv):
     if len(argv) < 1:
-        print "Usage: pin.py <certificate_path>"
+        print "Usage: pin-b64.py <certificate_path>"
         return
 
     x509        = X509.load_cert(argv[0])
     spki        = x509.get_pubkey()
     encodedSpki = spki.as_der()
 
-    digest = hashlib.sha1()
-    digest.update(encodedSpki)
-
     print "Calculating PIN for certificate: " + x509.get_subject().as_text()
-    byteResult = digest.digest()
-
-    print "Pin Value: " + binascii.hexlify(byteResult)
-    print "Pin Value: " + base64.b64encode(byteResult)
+    print "Pin Value: sha1/" + base64.b64encode(hashlib.sha1(encodedSpki).digest())
+    print "Pin Value: sha256/" + base64.b64encode(hashlib.sha256(encodedSpki).digest())
 
 if __name__ == '__main__':
     main(sys.argv[1:])